@@ -26,6 +26,7 @@ import org.bukkit.entity.BlockDisplay;
 import org.bukkit.entity.Player;
 import org.bukkit.permissions.PermissionAttachmentInfo;
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.util.BoundingBox;
 import org.bukkit.util.Vector;
 import org.joml.Vector3f;
 
@@ -53,6 +54,11 @@ public class DexSession {
     private double volume = 0;
     private BuildTransaction buildTrans;
     private Mask mask;
+    private DexterityDisplay reselectDisplay; //selection made from l1 and l2 that can be updated in place
+    private BoundingBox reselectBox;
+    private Mask reselectMask;
+    private Location reselectCenter;
+    private int reselectModCount;
     private boolean cancelPhysics = false, sentClickMsg = false;
     private BlockDisplay[] axisX, axisY, axisZ;
     private AxisType showingAxis = null;
@@ -136,12 +142,12 @@ public class DexSession {
             if (selected != null && !selected.isSaved()) {
                 DexterityDisplay s = new DexterityDisplay(plugin, selected.getCenter(), selected.getScale());
                 List<DexBlock> dblocks = new ArrayList<>();
-                for (DexBlock db : selected.getBlocks()) {
+                for (DexBlock db : selected.getBlocksView()) {
                     if (mask.isAllowed(db.getEntity().getBlock().getMaterial())) {
                         dblocks.add(db);
                     }
                 }
-                if (dblocks.size() == s.getBlocks().length) {
+                if (dblocks.size() == s.getBlocksCount()) {
                     selectFromLocations();
                 }
 
@@ -312,6 +318,7 @@ public class DexSession {
      * @param t
      */
     public void pushTransaction(Transaction t) {
+        invalidateReselect();
         if (!t.isPossible() || t instanceof RemoveTransaction) {
             buildTrans = null;
             toUndo.clear();
@@ -421,6 +428,7 @@ public class DexSession {
     }
 
     private void executeUndo(int count) {
+        invalidateReselect();
         if (buildTrans != null) {
             buildTrans.commit();
             pushTransaction(buildTrans);
@@ -465,6 +473,7 @@ public class DexSession {
     }
 
     private void executeRedo(int count) {
+        invalidateReselect();
         if (toRedo.size() == 0) {
             if (count > 0) {
                 p.sendMessage(plugin.getConfigString("none-redo"));
@@ -517,6 +526,7 @@ public class DexSession {
         if (selected == null || editType != null) {
             return;
         }
+        invalidateReselect();
         editType = type;
         editTransaction = t;
         if (d != selected) {
@@ -578,7 +588,7 @@ public class DexSession {
             switch (editType) {
                 case TRANSLATE:
                     BlockTransaction t = (BlockTransaction) editTransaction;
-                    t.commit(selected.getBlocks());
+                    t.commit(selected.getBlocksView());
                     t.commitCenter(selected.getCenter());
                 default:
             }
@@ -666,7 +676,7 @@ public class DexSession {
      * @return Integer count of blocks or 0 if nothing selected
      */
     public double getSelectedVolumeCount() {
-        return selected == null ? 0 : selected.getBlocks().length;
+        return selected == null ? 0 : selected.getBlocksCount();
     }
 
     /**
@@ -728,6 +738,12 @@ public class DexSession {
                 setSelected(null, false);
                 return;
             }
+            BoundingBox box = plugin.api().getRegionBox(l1, l2, l1ScaleOffset, l2ScaleOffset);
+            if (l1.getWorld().equals(l2.getWorld()) && canReselect()) {
+                reselectFromLocations(box);
+                return;
+            }
+
             DexterityDisplay d = plugin.api().selectFromLocations(l1, l2, mask, l1ScaleOffset, l2ScaleOffset);
             if (d == null) {
                 setSelected(null, false);
@@ -741,12 +757,70 @@ public class DexSession {
                 highlightSelected(d);
                 selected = d;
                 updateAxisDisplays();
+                if (l1.getWorld().equals(l2.getWorld())) {
+                    markReselectable(box);
+                }
             }
         } else {
             volume = 0;
         }
     }
 
+    /**
+     * @return True if the selection is still exactly the block displays that were in the cuboid when it was made, so
+     * moving a corner only needs to visit the block displays that enter or leave the cuboid
+     */
+    private boolean canReselect() {
+        return reselectDisplay != null && selected == reselectDisplay && !selected.isSaved()
+            && selected.getBlocksModCount() == reselectModCount && selected.getBlocksCount() < plugin.getMaxVolume()
+            && mask == reselectMask && l1.getWorld().equals(reselectCenter.getWorld())
+            && selected.getCenter().equals(reselectCenter);
+    }
+
+    private void markReselectable(BoundingBox box) {
+        reselectDisplay = selected;
+        reselectBox = box;
+        reselectMask = mask;
+        reselectCenter = selected.getCenter();
+        reselectModCount = selected.getBlocksModCount();
+    }
+
+    private void invalidateReselect() {
+        reselectDisplay = null;
+        reselectBox = null;
+    }
+
+    private void reselectFromLocations(BoundingBox box) {
+        SessionSelectionChangeEvent event = new SessionSelectionChangeEvent(this, selected, selected);
+        Bukkit.getPluginManager().callEvent(event);
+        if (event.isCancelled()) {
+            return;
+        }
+
+        DexterityAPI api = plugin.api();
+        List<BlockDisplay> added = new ArrayList<>(), removed = new ArrayList<>();
+        if (!api.reselectFromLocations(selected, l1.getWorld(), reselectBox, box, mask, added, removed)) {
+            invalidateReselect();
+            selectFromLocations();
+            return;
+        }
+
+        if (selected.getBlocksCount() == 0) {
+            invalidateReselect();
+            setSelected(null, false);
+            return;
+        }
+
+        for (BlockDisplay bd : removed) {
+            if (api.isInProcess(bd.getUniqueId())) {
+                bd.setGlowing(false);
+            }
+        }
+        api.tempHighlight(added, 30, Color.SILVER);
+        updateAxisDisplays();
+        markReselectable(box);
+    }
+
     public boolean isShowingAxes() {
         return showingAxis != null;
     }
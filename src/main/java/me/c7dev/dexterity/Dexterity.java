@@ -7,13 +7,24 @@ import me.c7dev.dexterity.api.DexterityAPI;
 import me.c7dev.dexterity.command.DexterityCommand;
 import me.c7dev.dexterity.displays.DexterityDisplay;
 import me.c7dev.dexterity.displays.animation.SitAnimation;
+import me.c7dev.dexterity.displays.storage.AsyncDisplayWriter;
+import me.c7dev.dexterity.displays.storage.BinaryDisplayStorage;
+import me.c7dev.dexterity.displays.storage.DisplayChunkIndex;
+import me.c7dev.dexterity.displays.storage.DisplayJournal;
+import me.c7dev.dexterity.displays.storage.DisplayRecord;
+import me.c7dev.dexterity.displays.storage.DisplayStorage;
+import me.c7dev.dexterity.displays.storage.SqliteDisplayStorage;
+import me.c7dev.dexterity.displays.storage.YamlDisplayStorage;
 import me.c7dev.dexterity.integration.IntegrationManager;
-import me.c7dev.dexterity.util.AxisPair;
+import me.c7dev.dexterity.util.BlockDisplayChunkIndex;
+import me.c7dev.dexterity.util.BlockSpatialIndex;
 import me.c7dev.dexterity.util.ClickedBlockDisplay;
 import me.c7dev.dexterity.util.DexBlock;
 import me.c7dev.dexterity.util.DexTransformation;
 import me.c7dev.dexterity.util.DexUtils;
+import me.c7dev.dexterity.util.EditApplier;
 import me.c7dev.dexterity.util.InteractionCommand;
+import me.c7dev.dexterity.util.OrientationCache;
 import me.c7dev.dexterity.util.OrientationKey;
 import me.c7dev.dexterity.util.RollOffset;
 import net.md_5.bungee.api.ChatColor;
@@ -25,23 +36,24 @@ import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.data.BlockData;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.BlockDisplay;
 import org.bukkit.entity.Display;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.util.BoundingBox;
 import org.bukkit.util.Vector;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -50,6 +62,9 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -63,10 +78,23 @@ public class Dexterity extends JavaPlugin {
     private final HashMap<String, DexterityDisplay> displays = new HashMap<>();
     private final HashMap<UUID, DexSession> sessions = new HashMap<>();
     private final HashMap<UUID, DexBlock> displayMap = new HashMap<>();
-    private final HashMap<UUID, String> unloadedUUIDs = new HashMap<>();
+    private final BlockSpatialIndex blockIndex = new BlockSpatialIndex();
+    private final BlockDisplayChunkIndex displayIndex = new BlockDisplayChunkIndex();
+    private final EditApplier editApplier = new EditApplier(this, 0);
+    private final Set<DexterityDisplay> interpolatedDisplays = new HashSet<>(); //rotated with rotateInterpolated and not baked
+    private OrientationCache orientationCache = new OrientationCache(4096);
+    private final HashMap<UUID, String> unloadedUUIDs = new HashMap<>(); //displays saved without chunk keys
+    private final DisplayChunkIndex unloadedChunks = new DisplayChunkIndex();
+    private final HashMap<String, String> pendingParents = new HashMap<>(); //child label -> parent label that is not loaded yet
+    private int loadGeneration = 0;
+    private boolean loadingDisplays = false;
     private FileConfiguration lang, defaultLang;
     private String chatColor, chatColor2, chatColor3;
     private DexterityAPI api;
+    private DisplayStorage storage;
+    private AsyncDisplayWriter writer;
+    private DisplayJournal journal;
+    private BukkitTask autosaveTask;
     private int maxVolume = 25000;
     private WorldEditPlugin we = null;
     private boolean legacy = false, hasUnloadedDisplays = false;
@@ -90,6 +118,11 @@ public class Dexterity extends JavaPlugin {
 
         new DexterityCommand(this);
         new EventListeners(this);
+        for (World w : Bukkit.getWorlds()) { //chunks loaded before the plugin enabled
+            for (Chunk c : w.getLoadedChunks()) {
+                displayIndex.updateAll(Arrays.asList(c.getEntities()));
+            }
+        }
 
         Plugin wePlugin = Bukkit.getServer().getPluginManager().getPlugin("WorldEdit");
         if (wePlugin != null) {
@@ -97,6 +130,7 @@ public class Dexterity extends JavaPlugin {
         }
         IntegrationManager.init(this);
 
+        openDisplayStorage();
         Bukkit.getScheduler().runTaskLater(this, this::loadDisplays, 1); //load post-world, once scheduler is running
 
         File schem = new File(getDataFolder().getAbsolutePath() + "/schematics");
@@ -115,7 +149,16 @@ public class Dexterity extends JavaPlugin {
     @Override
     public void onDisable() {
         api.clearAllMarkers();
+        editApplier.flush();
+        bakeInterpolated(null, null); //the entities are saved with their chunks after this
         saveDisplays();
+        boolean saved = writer != null && writer.shutdown();
+        if (storage != null) {
+            storage.close();
+        }
+        if (journal != null) {
+            journal.close(saved); //the journal is only needed if the final save did not finish
+        }
     }
 
     public void loadConfigSettings() {
@@ -127,6 +170,21 @@ public class Dexterity extends JavaPlugin {
             maxVolume = configMaxVal;
         }
         loadLanguageFile(false);
+        editApplier.setBudgetMicros(getConfig().getLong("edit-tick-budget-us", 10000));
+        orientationCache = new OrientationCache(getConfig().getInt("orientation-cache-size", 4096));
+
+        if (autosaveTask != null) {
+            autosaveTask.cancel();
+            autosaveTask = null;
+        }
+        long autosaveTicks = (long) (getConfig().getDouble("autosave-interval-seconds", 30) * 20);
+        if (autosaveTicks > 0) {
+            autosaveTask = Bukkit.getScheduler().runTaskTimer(this, () -> {
+                if (!loadingDisplays) {
+                    saveDisplays();
+                }
+            }, autosaveTicks, autosaveTicks);
+        }
     }
 
     public void reload() {
@@ -209,6 +267,9 @@ public class Dexterity extends JavaPlugin {
                 bd.setTeleportDuration(DexBlock.TELEPORT_DURATION);
             }
         }
+        if (entity instanceof BlockDisplay bd) {
+            displayIndex.update(bd);
+        }
         return entity;
     }
 
@@ -225,10 +286,15 @@ public class Dexterity extends JavaPlugin {
 
     @Deprecated
     public void setMappedDisplay(DexBlock b) { //handled by Dexterity - do not use in API
-        displayMap.put(b.getEntity().getUniqueId(), b);
+        DexBlock prev = displayMap.put(b.getEntity().getUniqueId(), b);
+        if (prev != null && prev != b) { //the index is by identity, so a replaced wrapper would be left in it
+            blockIndex.remove(prev);
+        }
         if (!b.getUniqueId().equals(b.getEntity().getUniqueId())) {
             displayMap.put(b.getUniqueId(), b);
         }
+        blockIndex.update(b);
+        displayIndex.update(b.getEntity());
     }
 
     public DexBlock getMappedDisplay(UUID block) {
@@ -243,6 +309,62 @@ public class Dexterity extends JavaPlugin {
     public void clearMappedDisplay(DexBlock block) { //handled by Dexterity - do not use in API
         displayMap.remove(block.getEntity().getUniqueId());
         displayMap.remove(block.getUniqueId());
+        blockIndex.remove(block);
+    }
+
+    /**
+     * @return The spatial index of every managed block, used for ray picking
+     */
+    public BlockSpatialIndex getBlockIndex() {
+        return blockIndex;
+    }
+
+    /**
+     * @return The chunk index of every loaded block display, used for region selections
+     */
+    public BlockDisplayChunkIndex getDisplayIndex() {
+        return displayIndex;
+    }
+
+    public void setInterpolated(DexterityDisplay d, boolean b) { //handled by DexRotation - do not use in API
+        if (b) {
+            interpolatedDisplays.add(d);
+        } else {
+            interpolatedDisplays.remove(d);
+        }
+    }
+
+    /**
+     * Bakes the displays rotated by interpolation whose blocks may be rendered inside of a box, so that their block
+     * locations, indexes, and entities match what players see there
+     *
+     * @param world The world of the box
+     * @param box   The box, or null to bake every display in every world
+     */
+    public void bakeInterpolated(World world, BoundingBox box) {
+        if (interpolatedDisplays.isEmpty()) {
+            return;
+        }
+        for (DexterityDisplay d : new ArrayList<>(interpolatedDisplays)) {
+            DexRotation rot = d.getRotationManager(true);
+            if (box == null || (d.getWorld() == world && rot.isInterpolatedIn(box))) {
+                rot.bakeInterpolated();
+            }
+        }
+    }
+
+    /**
+     * @return The applier that spreads large block edits across ticks
+     */
+    public EditApplier getEditApplier() {
+        return editApplier;
+    }
+
+    /**
+     * @return The cache of block orientations after a rotation, shared by every display
+     */
+    public OrientationCache getOrientationCache() {
+        return orientationCache;
     }
 
     public String getConfigString(String dir, String def) {
@@ -354,59 +476,319 @@ public class Dexterity extends JavaPlugin {
     }
 
     /**
-     * Reload the files in the saved displays folder
+     * Checks if the saved displays are being loaded, in which case {@link #getDisplays()} only contains the displays
+     * loaded so far and commands are not accepted
+     *
+     * @return true if a load of the saved displays has not finished
+     */
+    public boolean isLoadingDisplays() {
+        return loadingDisplays;
+    }
+
+    /**
+     * Reload the saved displays from the display storage
      */
     public void reloadDisplays() {
+        bakeInterpolated(null, null); //the entities are wrapped again by the new displays
         saveDisplays();
+        if (writer != null) {
+            writer.waitForPending();
+        }
         loadDisplays();
     }
 
-    public File getDisplayFile(String label) {
-        return new File(this.getDataFolder().getAbsolutePath() + "/displays/" + label + ".yml");
+    /**
+     * @return The storage that saved displays are read from and written to
+     */
+    public DisplayStorage getDisplayStorage() {
+        return storage;
+    }
+
+    /**
+     * @return The write-ahead journal that records display changes made since the last save
+     */
+    public DisplayJournal getJournal() {
+        return journal;
+    }
+
+    private void openDisplayStorage() {
+        long commitMs = getConfig().getLong("journal-commit-interval-ms", 200);
+        long compactSize = getConfig().getLong("journal-compact-size-kb", 1024) * 1024;
+        journal = new DisplayJournal(new File(this.getDataFolder().getAbsolutePath() + "/displays.journal"), commitMs, compactSize,
+            () -> Bukkit.getScheduler().runTask(this, this::compactJournal));
+
+        File legacyFolder = new File(this.getDataFolder().getAbsolutePath() + "/displays/");
+        File binaryFile = new File(this.getDataFolder().getAbsolutePath() + "/displays.dat");
+        String type = getConfig().getString("display-storage", "binary");
+        if (type.equalsIgnoreCase("yaml")) {
+            storage = new YamlDisplayStorage(legacyFolder);
+        } else if (type.equalsIgnoreCase("sqlite")) {
+            storage = new SqliteDisplayStorage(new File(this.getDataFolder().getAbsolutePath() + "/displays.db"));
+        } else {
+            if (!type.equalsIgnoreCase("binary")) {
+                Bukkit.getLogger().warning("Unknown display-storage type '" + type + "', using binary.");
+            }
+            storage = new BinaryDisplayStorage(binaryFile);
+        }
+
+        try {
+            storage.open();
+            if (!(storage instanceof YamlDisplayStorage) && storage.getLabels().isEmpty() && legacyFolder.exists()) {
+                convertLegacyDisplays(legacyFolder);
+            }
+            if (storage instanceof SqliteDisplayStorage && storage.getLabels().isEmpty() && binaryFile.exists()) {
+                BinaryDisplayStorage binaryStorage = new BinaryDisplayStorage(binaryFile);
+                binaryStorage.open();
+                int count = importDisplays(binaryStorage);
+                binaryStorage.close();
+                if (!binaryFile.renameTo(new File(binaryFile.getAbsolutePath() + ".bak"))) {
+                    Bukkit.getLogger().warning("Could not rename displays.dat, it can be safely deleted.");
+                }
+                Bukkit.getLogger().info("Converted " + count + " saved displays to the SQLite storage.");
+            }
+
+            int recovered = journal.replay(storage);
+            if (recovered > 0) {
+                Bukkit.getLogger().warning("Recovered " + recovered + " unsaved display changes from the journal.");
+            }
+            writer = new AsyncDisplayWriter(storage, this::onWriteFailed);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            Bukkit.getLogger().severe("Could not open the display storage!");
+            storage = null;
+            return;
+        }
+
+        if (commitMs > 0) {
+            try {
+                journal.open();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                Bukkit.getLogger().severe("Could not open the display journal, changes will only be saved on the autosave interval!");
+            }
+        }
+    }
+
+    /**
+     * Rotates out the journal once everything in it has been written to the display storage
+     */
+    private void compactJournal() {
+        if (writer == null || !journal.startCompaction()) {
+            return;
+        }
+        saveDisplays();
+        writer.runAfterPending(journal::finishCompaction, journal::abortCompaction);
+    }
+
+    /**
+     * Marks the displays whose snapshots could not be written as modified, so that the next save retries them.
+     * Called from the writer thread.
+     */
+    private void onWriteFailed(List<String> labels) {
+        if (!isEnabled()) {
+            return;
+        }
+        Bukkit.getScheduler().runTask(this, () -> {
+            for (String label : labels) {
+                DexterityDisplay d = getDisplay(label);
+                if (d != null) {
+                    d.markDirty();
+                }
+            }
+        });
+    }
+
+    /**
+     * Imports the per-display YAML files from before the display storage was introduced, then moves them to a backup folder
+     */
+    private void convertLegacyDisplays(File legacyFolder) throws IOException {
+        int count = importDisplays(new YamlDisplayStorage(legacyFolder));
+        if (count == 0) {
+            return;
+        }
+
+        File backup = new File(this.getDataFolder().getAbsolutePath() + "/displays-yml-backup/");
+        if (!legacyFolder.renameTo(backup)) {
+            Bukkit.getLogger().warning("Could not move the legacy displays folder, it can be safely deleted.");
+        }
+        Bukkit.getLogger().info("Converted " + count + " saved displays to the new storage format.");
     }
 
     /**
-     * Loads all saved displays
+     * Copies every display from another storage into the current display storage
      *
-     * @return The number of displays that were just loaded
+     * @return The number of displays copied
      */
-    private int loadDisplays() {
-        File folder = new File(this.getDataFolder().getAbsolutePath() + "/displays/");
-        if (!folder.exists()) {
-            folder.mkdirs();
-            return 0;
+    private int importDisplays(DisplayStorage source) throws IOException {
+        int count = 0;
+        for (String label : source.getLabels()) {
+            DisplayRecord r = source.load(label);
+            if (r != null) {
+                storage.save(r);
+                count++;
+            }
+        }
+        storage.flush();
+        return count;
+    }
+
+    /**
+     * Loads all saved displays. Records are decoded on a worker pool, then the block entities are looked up on the
+     * main thread in batches over the following ticks.
+     */
+    private void loadDisplays() {
+        if (storage == null) {
+            return;
         }
 
         displays.clear();
         sessions.clear();
-        int displayCurrSize = displays.size();
+        blockIndex.clear();
+        unloadedChunks.clear();
+        pendingParents.clear();
+        int generation = ++loadGeneration;
+        loadingDisplays = true;
+        journal.setPaused(true);
+        long startTime = System.currentTimeMillis();
+
+        List<String> labels = new ArrayList<>();
+        for (String label : storage.getLabels()) {
+            //defer displays in unloaded chunks without decoding them
+            long[] chunks = storage.getChunkKeys(label);
+            String world = chunks == null ? null : storage.getWorld(label);
+            if (world != null && !DisplayChunkIndex.areChunksLoaded(world, chunks, null)) {
+                unloadedChunks.add(label, world, chunks);
+                hasUnloadedDisplays = true;
+                continue;
+            }
+            labels.add(label);
+        }
+        int deferred = unloadedChunks.getLabels().size();
 
-        try {
+        int threads = Math.max(1, Math.min(getConfig().getInt("startup-load-threads", 4), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "Dexterity Display Loader");
+            t.setDaemon(true);
+            return t;
+        });
 
-            for (File f : folder.listFiles()) {
-                loadDisplay(f, true);
+        List<CompletableFuture<PreparedDisplay>> futures = new ArrayList<>();
+        for (String label : labels) {
+            futures.add(CompletableFuture.supplyAsync(() -> prepareDisplay(label), pool));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((v, ex) -> {
+            pool.shutdown();
+            long parseTime = System.currentTimeMillis() - startTime;
+            List<PreparedDisplay> prepared = new ArrayList<>();
+            for (CompletableFuture<PreparedDisplay> f : futures) {
+                PreparedDisplay p = f.getNow(null);
+                if (p != null) {
+                    prepared.add(p);
+                }
             }
-            return displays.size() - displayCurrSize;
+            Bukkit.getScheduler().runTask(this, () -> applyPreparedDisplays(prepared, generation, startTime, parseTime, threads, deferred));
+        });
+    }
+
+    /**
+     * Decodes a saved display and resolves its owners. Safe to call off of the main thread.
+     */
+    private PreparedDisplay prepareDisplay(String label) {
+        try {
+            DisplayRecord r = storage.load(label);
+            if (r == null) {
+                return null;
+            }
+            List<OfflinePlayer> owners = new ArrayList<>();
+            for (UUID u : r.owners) {
+                OfflinePlayer op = Bukkit.getOfflinePlayer(u);
+                if (op == null || op.getName() == null) {
+                    continue;
+                }
+                owners.add(op);
+            }
+            return new PreparedDisplay(r, owners);
         } catch (Exception ex) {
             ex.printStackTrace();
-            Bukkit.getLogger().severe("Could not load Dexterity displays!");
-            return 0;
+            Bukkit.getLogger().severe("Could not load '" + label + "' display!");
+            return null;
         }
     }
 
-    private void loadDisplay(File f, boolean verbose) {
-        if (f == null || !f.getName().endsWith(".yml")) {
+    private void applyPreparedDisplays(List<PreparedDisplay> prepared, int generation, long startTime, long parseTime, int threads, int deferred) {
+        int batchSize = Math.max(1, getConfig().getInt("startup-load-batch-size", 250));
+        new BukkitRunnable() {
+            int i = 0, ticks = 0;
+
+            @Override
+            public void run() {
+                if (generation != loadGeneration) { //reloaded while loading
+                    cancel();
+                    return;
+                }
+                ticks++;
+                int end = Math.min(i + batchSize, prepared.size());
+                for (; i < end; i++) {
+                    PreparedDisplay p = prepared.get(i);
+                    try { //one broken display must not leave the plugin stuck loading
+                        loadDisplay(p.record, p.owners, true);
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                        Bukkit.getLogger().severe("Could not load '" + p.record.label + "' display!");
+                    }
+                }
+                if (i < prepared.size()) {
+                    return;
+                }
+                cancel();
+                loadingDisplays = false;
+                journal.setPaused(false);
+
+                for (Entry<String, String> entry : pendingParents.entrySet()) {
+                    if (getDisplay(entry.getValue()) == null && !unloadedChunks.getLabels().contains(entry.getValue())) {
+                        Bukkit.getLogger().severe("Could not find parent display '" + entry.getValue() + "'!");
+                    }
+                }
+
+                Bukkit.getLogger().info("Loaded " + displays.size() + " displays in " + (System.currentTimeMillis() - startTime) + "ms ("
+                        + parseTime + "ms decoding on " + threads + " threads, " + ticks + " ticks placing blocks"
+                        + (deferred > 0 ? ", " + deferred + " waiting for chunks to load" : "") + ")");
+            }
+        }.runTaskTimer(this, 0, 1);
+    }
+
+    private void loadDisplay(DisplayRecord r, boolean verbose) {
+        if (r == null) {
             return;
         }
-        String label = f.getName().replaceAll("\\.yml", "");
+        List<OfflinePlayer> owners = new ArrayList<>();
+        for (UUID u : r.owners) {
+            OfflinePlayer op = Bukkit.getOfflinePlayer(u);
+            if (op == null || op.getName() == null) {
+                continue;
+            }
+            owners.add(op);
+        }
+        loadDisplay(r, owners, verbose);
+    }
+
+    private void loadDisplay(DisplayRecord r, List<OfflinePlayer> owners, boolean verbose) {
+        journal.setPaused(true);
+        try {
+            loadDisplayHelper(r, owners, verbose);
+        } finally {
+            journal.setPaused(loadingDisplays);
+        }
+    }
 
-        FileConfiguration afile = YamlConfiguration.loadConfiguration(f);
+    private void loadDisplayHelper(DisplayRecord r, List<OfflinePlayer> owners, boolean verbose) {
+        String label = r.label;
 
         //load entities by uuid
         List<BlockDisplay> blocks = new ArrayList<>();
         boolean missingBlocks = false;
-        for (String uuid_str : afile.getStringList("uuids")) {
-            UUID uuid = UUID.fromString(uuid_str);
+        for (UUID uuid : r.uuids) {
             Entity entity = Bukkit.getEntity(uuid);
 
             if (entity != null && entity instanceof BlockDisplay) {
@@ -425,205 +807,135 @@ public class Dexterity extends JavaPlugin {
         }
 
         //basic metadata
-        Location center = DexUtils.deserializeLocation(afile, "center");
-        double sx = afile.getDouble("scale-x");
-        double sy = afile.getDouble("scale-y");
-        double sz = afile.getDouble("scale-z");
-        float baseYaw = (float) afile.getDouble("yaw");
-        float basePitch = (float) afile.getDouble("pitch");
-        float baseRoll = (float) afile.getDouble("roll");
-        Vector scale = new Vector(sx == 0 ? 1 : sx, sy == 0 ? 1 : sy, sz == 0 ? 1 : sz);
-        DexterityDisplay disp = new DexterityDisplay(this, center, scale, label);
-        disp.setBaseRotation(baseYaw, basePitch, baseRoll);
+        DexterityDisplay disp = new DexterityDisplay(this, r.getCenter(), r.getScale(), label);
+        disp.setBaseRotation(r.yaw, r.pitch, r.roll);
 
         for (BlockDisplay bd : blocks) {
             disp.addBlock(new DexBlock(bd, disp));
         }
 
         //get click commands
-        ConfigurationSection cmdSection = afile.getConfigurationSection("commands");
-        if (cmdSection != null) {
-            for (String key : cmdSection.getKeys(false)) {
-                disp.addCommand(new InteractionCommand(afile.getConfigurationSection("commands." + key)));
-            }
+        for (InteractionCommand cmd : r.commands) {
+            disp.addCommand(cmd);
         }
 
         //seat
-        double seatYOffset = afile.getDouble("seat-offset", Double.MAX_VALUE);
-        if (seatYOffset < Double.MAX_VALUE) {
+        if (r.hasSeat()) {
             SitAnimation a = new SitAnimation(disp);
-            if (seatYOffset != 0) {
-                a.setSeatOffset(new Vector(0, seatYOffset, 0));
+            if (r.seatOffset != 0) {
+                a.setSeatOffset(new Vector(0, r.seatOffset, 0));
             }
             disp.addAnimation(a);
         }
 
         //display drop item
-        String itemSchem = afile.getString("item-schem-name");
-        if (itemSchem != null) {
-            disp.setDropItem(afile.getItemStack("item"), itemSchem);
+        if (r.itemSchemName != null) {
+            disp.setDropItem(r.item, r.itemSchemName);
         }
-        if (afile.getBoolean("unlisted", false)) {
+        if (r.unlisted) {
             disp.setListed(false);
         }
 
         //display owners
-        List<String> ownerUUIDs = afile.getStringList("owners");
-        if (ownerUUIDs != null && ownerUUIDs.size() > 0) {
-            List<OfflinePlayer> owners = new ArrayList<>();
-            for (String u : ownerUUIDs) {
-                OfflinePlayer op = Bukkit.getOfflinePlayer(UUID.fromString(u));
-                if (op == null || op.getName() == null) {
-                    continue;
-                }
-                owners.add(op);
-            }
+        if (owners.size() > 0) {
             disp.setOwners(owners);
         }
 
+        DexBlock[] blocks = disp.getBlocks(); //snapshot on the main thread, shared by both passes
         new BukkitRunnable() {
             @Override
             public void run() {
                 HashMap<OrientationKey, RollOffset> cache = new HashMap<>();
-                for (DexBlock db : disp.getBlocks()) {
+                for (DexBlock db : blocks) {
                     db.loadRoll(cache);
                 }
+                Bukkit.getScheduler().runTask(Dexterity.this, () -> { //roll offset moves the visible center
+                    for (DexBlock db : blocks) {
+                        blockIndex.move(db);
+                    }
+                });
             }
         }.runTaskAsynchronously(this);
 
-        //set parent display
-        String parentLabel = afile.getString("parent");
-        if (parentLabel != null) {
-            DexterityDisplay parent = getDisplay(parentLabel);
-            if (parent == null && verbose) {
-                Bukkit.getLogger().severe("Could not find parent display '" + parentLabel + "'!");
+        //parent links are resolved whichever of the parent or child loads last
+        if (r.parent != null) {
+            DexterityDisplay parent = getDisplay(r.parent);
+            if (parent == null) {
+                pendingParents.put(label, r.parent);
             } else {
-                parent.addSubdisplay(disp);
-                disp.setParent(parent);
+                linkParent(disp, parent);
+            }
+        }
+        for (Entry<String, String> entry : new ArrayList<>(pendingParents.entrySet())) {
+            if (entry.getValue().equals(label)) {
+                DexterityDisplay child = getDisplay(entry.getKey());
+                pendingParents.remove(entry.getKey());
+                if (child != null) {
+                    linkParent(child, disp);
+                }
             }
         }
 
+        disp.clearDirty();
         displays.put(disp.getLabel(), disp);
     }
 
-    public void saveDisplays() {
-        try {
-            for (DexterityDisplay disp : getDisplays()) {
-                saveDisplay(disp);
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+    private void linkParent(DexterityDisplay child, DexterityDisplay parent) {
+        parent.addSubdisplay(child);
+        child.setParent(parent);
     }
 
-    public void saveDisplay(DexterityDisplay disp) {
-
-        if (!disp.isSaved() || disp.getLabel().length() == 0 || disp.getBlocksCount() == 0) {
-            return;
-        }
-
-        File f = new File(this.getDataFolder().getAbsoluteFile() + "/displays/" + disp.getLabel() + ".yml");
-        try {
-            if (!f.exists()) {
-                f.createNewFile();
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            Bukkit.getLogger().severe("Could not save display " + disp.getLabel() + "!");
-            return;
-        }
-        FileConfiguration afile = YamlConfiguration.loadConfiguration(f);
-        for (String s : afile.getKeys(false)) {
-            afile.set(s, null);
-        }
-
-        //basic metadata
-        afile.set("center", disp.getCenter().serialize());
-        if (disp.getScale().getX() != 1) {
-            afile.set("scale-x", disp.getScale().getX());
-        }
-        if (disp.getScale().getY() != 1) {
-            afile.set("scale-y", disp.getScale().getY());
-        }
-        if (disp.getScale().getZ() != 1) {
-            afile.set("scale-z", disp.getScale().getZ());
-        }
-
-        SitAnimation seat = (SitAnimation) disp.getAnimation(SitAnimation.class);
-        if (seat != null) {
-            afile.set("seat-offset", seat.getSeatOffset().getY());
-        }
-
-        //owners list
-        OfflinePlayer[] owners = disp.getOwners();
-        if (owners.length > 0) {
-            List<String> uuids = new ArrayList<>();
-            for (OfflinePlayer owner : owners) {
-                uuids.add(owner.getUniqueId().toString());
-            }
-            afile.set("owners", uuids);
+    /**
+     * Snapshots every saved display that was modified since it was last saved, then writes them to the display storage asynchronously
+     *
+     * @return The number of displays queued to be written
+     */
+    public int saveDisplays() {
+        if (writer == null) {
+            return 0;
         }
-
-        if (disp.getRotationManager() != null) {
-            DexRotation rot = disp.getRotationManager();
-            AxisPair a = new AxisPair(rot.getXAxis(), rot.getZAxis());
-            Vector res = a.getPitchYawRoll();
-            if (res.getY() != 0) {
-                afile.set("yaw", res.getY());
-            }
-            if (res.getX() != 0) {
-                afile.set("pitch", res.getX());
-            }
-            if (res.getZ() != 0) {
-                afile.set("roll", res.getZ());
+        List<DisplayRecord> records = new ArrayList<>();
+        for (DexterityDisplay disp : displays.values()) {
+            if (!disp.isDirty()) {
+                continue;
             }
-        }
-
-        //click commands
-        if (disp.getCommandCount() > 0) {
-            afile.set("commands", null);
-            InteractionCommand[] cmds = disp.getCommands();
-            for (int i = 0; i < cmds.length; i++) {
-                afile.set("commands.cmd-" + (i + 1), cmds[i].serialize());
+            DisplayRecord r = DisplayRecord.of(disp);
+            if (r != null) {
+                records.add(r);
             }
+            disp.clearDirty();
         }
+        writer.save(records);
+        return records.size();
+    }
 
-        //drop item
-        ItemStack item = disp.getDropItem();
-        if (item != null) {
-            afile.set("item-schem-name", disp.getDropItemSchematicName());
-            afile.set("item", item);
-        }
-        if (!disp.isListed()) {
-            afile.set("unlisted", true);
-        }
-
-        //save block uuids
-        List<String> uuids = new ArrayList<>();
-        DexBlock[] blocks = disp.getBlocks();
-        if (blocks.length > 0) {
-            for (DexBlock db : disp.getBlocks()) {
-                uuids.add(db.getEntity().getUniqueId().toString());
-            }
-            afile.set("uuids", uuids);
-        } else {
-            Bukkit.getLogger().warning("JAR modified, skipping save of " + disp.getLabel());
+    /**
+     * Snapshots a display and its sub-displays, then writes them to the display storage asynchronously
+     *
+     * @param disp
+     */
+    public void saveDisplay(DexterityDisplay disp) {
+        if (writer == null) {
             return;
         }
-
-        if (disp.getParent() != null) {
-            afile.set("parent", disp.getParent().getLabel());
+        List<DisplayRecord> records = new ArrayList<>();
+        snapshotDisplay(disp, records);
+        for (DisplayRecord r : records) {
+            journal.logRecord(r);
         }
+        writer.save(records);
+    }
 
-        try {
-            afile.save(f);
-        } catch (IOException e) {
-            e.printStackTrace();
-            Bukkit.getLogger().severe("Could not save '" + disp.getLabel() + "' display!");
+    private void snapshotDisplay(DexterityDisplay disp, List<DisplayRecord> records) {
+        DisplayRecord r = DisplayRecord.of(disp);
+        if (r == null) {
+            return;
         }
+        records.add(r);
+        disp.clearDirty();
 
         for (DexterityDisplay sub : disp.getSubdisplays()) {
-            saveDisplay(sub);
+            snapshotDisplay(sub, records);
         }
     }
 
@@ -637,6 +949,15 @@ public class Dexterity extends JavaPlugin {
             return;
         }
 
+        //displays that were indexed by chunk are only decoded once all of their chunks are loaded
+        for (String label : unloadedChunks.getLabels(c)) {
+            if (!unloadedChunks.isReady(label, c)) {
+                continue;
+            }
+            unloadedChunks.remove(label);
+            loadDisplay(storage.load(label), true); //falls back to waiting on UUIDs if the index was stale
+        }
+
         Set<String> unloadedLabels = new HashSet<>();
         for (Entity entity : c.getEntities()) {
             if (!(entity instanceof BlockDisplay)) {
@@ -649,17 +970,16 @@ public class Dexterity extends JavaPlugin {
         }
 
         for (String label : unloadedLabels) { //possible displays that can now be loaded
-            File f = getDisplayFile(label);
-            loadDisplay(f, true); //won't load if not all displays are there
+            loadDisplay(storage.load(label), true); //won't load if not all displays are there
             DexterityDisplay d = getDisplay(label);
             if (d != null) {
-                for (DexBlock db : d.getBlocks()) {
+                for (DexBlock db : d.getBlocksView()) {
                     unloadedUUIDs.remove(db.getEntity().getUniqueId());
                 }
             }
         }
 
-        if (unloadedUUIDs.size() == 0) {
+        if (unloadedUUIDs.size() == 0 && unloadedChunks.isEmpty()) {
             hasUnloadedDisplays = false;
         }
     }
@@ -695,23 +1015,16 @@ public class Dexterity extends JavaPlugin {
         }
 
         hasUnloadedDisplays = false;
-        List<String> uniqueLabels = new ArrayList<>();
-        unloadedUUIDs.entrySet().forEach(e -> {
-            if (!uniqueLabels.contains(e.getValue())) {
-                uniqueLabels.add(e.getValue());
-            }
-        });
+        Set<String> uniqueLabels = unloadedChunks.getLabels();
+        uniqueLabels.addAll(unloadedUUIDs.values());
         unloadedUUIDs.clear();
+        unloadedChunks.clear();
         for (String label : uniqueLabels) {
-            File f = getDisplayFile(label);
-            try {
-                if (f != null) {
-                    f.delete();
-                    count++;
-                }
-            } catch (Exception ex) {
-
+            if (writer != null) {
+                writer.delete(label);
             }
+            journal.logDelete(label);
+            count++;
         }
 
         Bukkit.getLogger().warning("Purged " + count + " saved display files that could not be loaded");
@@ -719,7 +1032,7 @@ public class Dexterity extends JavaPlugin {
     }
 
     private boolean purgeHelper(DexterityDisplay d) {
-        for (DexBlock db : d.getBlocks()) {
+        for (DexBlock db : d.getBlocksView()) {
             if (Bukkit.getEntity(db.getUniqueId()) != null) {
                 return false;
             }
@@ -766,15 +1079,10 @@ public class Dexterity extends JavaPlugin {
             return;
         }
         displays.remove(d.getLabel());
-
-        try {
-            File f = new File(this.getDataFolder().getAbsolutePath() + "/displays/" + d.getLabel() + ".yml");
-            if (f.exists()) {
-                f.delete();
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        if (writer != null) {
+            writer.delete(d.getLabel());
         }
+        journal.logDelete(d.getLabel());
     }
 
     public String getNextLabel(String s) {
@@ -866,6 +1174,43 @@ public class Dexterity extends JavaPlugin {
         return r;
     }
 
+    public CompletableFuture<Set<String>> queryDisplayLabels(World world) {
+        if (storage instanceof SqliteDisplayStorage sqlStorage) {
+            return sqlStorage.queryLabelsInWorld(world.getName());
+        }
+        Set<String> r = new HashSet<>();
+        for (Entry<String, DexterityDisplay> entry : displays.entrySet()) {
+            if (world.equals(entry.getValue().getCenter().getWorld())) {
+                r.add(entry.getKey());
+            }
+        }
+        return CompletableFuture.completedFuture(r);
+    }
+
+    public CompletableFuture<Set<String>> queryDisplayLabels(OfflinePlayer owner) {
+        if (storage instanceof SqliteDisplayStorage sqlStorage) {
+            return sqlStorage.queryLabelsByOwner(owner.getUniqueId());
+        }
+        Set<String> r = new HashSet<>();
+        for (Entry<String, DexterityDisplay> entry : displays.entrySet()) {
+            for (OfflinePlayer o : entry.getValue().getOwners()) {
+                if (o.getUniqueId().equals(owner.getUniqueId())) {
+                    r.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(r);
+    }
+
+    public CompletableFuture<String> queryDisplayLabel(UUID block) {
+        if (storage instanceof SqliteDisplayStorage sqlStorage) {
+            return sqlStorage.queryLabelByBlock(block);
+        }
+        DexBlock db = displayMap.get(block);
+        return CompletableFuture.completedFuture(db == null || db.getDexterityDisplay() == null ? null : db.getDexterityDisplay().getLabel());
+    }
+
     public Collection<DexterityDisplay> getDisplays() {
         Collection<DexterityDisplay> r = new ArrayList<>();
         for (Entry<String, DexterityDisplay> entry : displays.entrySet()) {
@@ -912,4 +1257,15 @@ public class Dexterity extends JavaPlugin {
         deleteEditSession(u);
         sessions.put(u, s);
     }
+
+    private static class PreparedDisplay {
+        final DisplayRecord record;
+        final List<OfflinePlayer> owners;
+
+        PreparedDisplay(DisplayRecord record, List<OfflinePlayer> owners) {
+            this.record = record;
+            this.owners = owners;
+        }
+    }
+
 }
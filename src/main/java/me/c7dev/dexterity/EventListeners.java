@@ -1,5 +1,7 @@
 package me.c7dev.dexterity;
 
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import me.c7dev.dexterity.api.DexRotation;
 import me.c7dev.dexterity.api.events.PlayerClickBlockDisplayEvent;
 import me.c7dev.dexterity.api.events.TransactionCompletionEvent;
 import me.c7dev.dexterity.api.events.TransactionEvent;
@@ -25,6 +27,7 @@ import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.type.Slab;
 import org.bukkit.block.data.type.TrapDoor;
 import org.bukkit.entity.BlockDisplay;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -32,11 +35,14 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.block.BlockPhysicsEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntitySpawnEvent;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.persistence.PersistentDataType;
@@ -77,6 +83,9 @@ public class EventListeners implements Listener {
         if (!e.getPlayer().hasPermission("dexterity.click") && !e.getPlayer().hasPermission("dexterity.build")) {
             return;
         }
+        if (plugin.isLoadingDisplays()) {
+            return;
+        }
 
         if (clickDelay(e.getPlayer().getUniqueId())) {
             return;
@@ -389,6 +398,42 @@ public class EventListeners implements Listener {
         plugin.processUnloadedDisplaysInChunk(e.getChunk());
     }
 
+    @EventHandler
+    public void onEntitiesLoad(EntitiesLoadEvent e) {
+        plugin.getDisplayIndex().updateAll(e.getEntities());
+    }
+
+    @EventHandler
+    public void onEntitiesUnload(EntitiesUnloadEvent e) { //bake before the entities are saved with the chunk
+        for (Entity entity : e.getEntities()) {
+            if (!(entity instanceof BlockDisplay)) {
+                continue;
+            }
+            DexBlock db = plugin.getMappedDisplay(entity.getUniqueId());
+            if (db == null || db.getDexterityDisplay() == null) {
+                continue;
+            }
+            DexRotation rot = db.getDexterityDisplay().getRotationManager();
+            if (rot != null && rot.isInterpolated()) {
+                rot.bakeInterpolated();
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntitySpawn(EntitySpawnEvent e) {
+        if (e.getEntity() instanceof BlockDisplay bd) {
+            plugin.getDisplayIndex().update(bd);
+        }
+    }
+
+    @EventHandler
+    public void onEntityRemove(EntityRemoveFromWorldEvent e) { //also called when the entity's chunk unloads
+        if (e.getEntity() instanceof BlockDisplay) {
+            plugin.getDisplayIndex().remove(e.getEntity());
+        }
+    }
+
     @EventHandler
     public void onTransactionPush(TransactionCompletionEvent e) {
         updateAxes(e);
@@ -407,6 +452,7 @@ public class EventListeners implements Listener {
     @EventHandler
     public void onQuit(PlayerQuitEvent e) {
         UUID u = e.getPlayer().getUniqueId();
+        plugin.api().invalidatePickCache(e.getPlayer());
         DexSession session = plugin.getEditSession(u);
         if (session != null) {
             session.cancelEdit();
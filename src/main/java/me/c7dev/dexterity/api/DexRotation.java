@@ -3,26 +3,31 @@ package me.c7dev.dexterity.api;
 import me.c7dev.dexterity.api.events.DisplayRotationEvent;
 import me.c7dev.dexterity.displays.DexterityDisplay;
 import me.c7dev.dexterity.transaction.RotationTransaction;
-import me.c7dev.dexterity.util.AxisPair;
 import me.c7dev.dexterity.util.DexBlock;
 import me.c7dev.dexterity.util.DexUtils;
+import me.c7dev.dexterity.util.OrientationCache;
+import me.c7dev.dexterity.util.ParallelRotation;
 import me.c7dev.dexterity.util.QueuedRotation;
 import me.c7dev.dexterity.util.RotationPlan;
+import me.c7dev.dexterity.util.RotationSnapshot;
+import me.c7dev.dexterity.util.YawRotation;
 import org.bukkit.Bukkit;
 import org.bukkit.Color;
 import org.bukkit.Location;
 import org.bukkit.entity.BlockDisplay;
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.util.BoundingBox;
+import org.bukkit.util.Transformation;
 import org.bukkit.util.Vector;
-import org.joml.Matrix3d;
 import org.joml.Quaterniond;
+import org.joml.Quaternionf;
 import org.joml.Vector3d;
+import org.joml.Vector3f;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.function.IntConsumer;
 
 /**
  * Manages all rotation events of a {@link DexterityDisplay}
@@ -30,16 +35,17 @@ import java.util.UUID;
 public class DexRotation {
 
     public static final double cutoff = 0.000001;
-    private final HashMap<Vector, Vector> dirs = new HashMap<>();
-    private final HashMap<Vector, AxisPair> axisPairs = new HashMap<>();
     private final DexterityDisplay d;
     private final List<BlockDisplay> points = new ArrayList<>();
-    private final ArrayDeque<QueuedRotation> queue = new ArrayDeque<>();
+    private final ArrayDeque<PendingRotation> queue = new ArrayDeque<>();
     private Vector3d x = new Vector3d(1, 0, 0), y = new Vector3d(0, 1, 0), z = new Vector3d(0, 0, 1);
     private QueuedRotation last = null;
     private double baseX = 0, baseY = 0, baseZ = 0, basePitch = 0, baseRoll = 0, baseYaw = 0;
     private RotationTransaction t = null;
     private boolean processing = false;
+    private long coalesced = 0;
+    private boolean interpolated = false;
+    private double interpolatedRadius = 0; //every block stays within this distance of the center while interpolating
 
     /**
      * Manages all rotations and data used for rotations for a specific DexterityDisplay
@@ -109,12 +115,10 @@ public class DexRotation {
      */
     public void refreshAxis() {
 
-        clearCached();
-
         //Finds the mode of all three axes, rather than the closest to zero
         double yawMode = 0, pitchMode = 0, rollMode = 0;
         int count = 0;
-        for (DexBlock db : d.getBlocks()) {
+        for (DexBlock db : d.getBlocksView()) {
             double yaw = db.getEntity().getLocation().getYaw(), pitch = db.getEntity().getLocation().getPitch(), roll = db.getRoll();
 
             if (yaw == yawMode && pitch == pitchMode && roll == rollMode) {
@@ -171,10 +175,11 @@ public class DexRotation {
 
     /**
      * Clear the cached or pre-calculated data pertaining to the selection's rotations
+     *
+     * @deprecated Orientations are cached by {@link me.c7dev.dexterity.util.OrientationCache}, keyed by the rotation, so there is nothing to clear
      */
+    @Deprecated
     public void clearCached() {
-        dirs.clear();
-        axisPairs.clear();
     }
 
     public double getX() {
@@ -218,7 +223,8 @@ public class DexRotation {
         this.x = new Vector3d(x.getX(), x.getY(), x.getZ());
         this.y = new Vector3d(y.getX(), y.getY(), y.getZ());
         this.z = new Vector3d(z.getX(), z.getY(), z.getZ());
-        clearCached();
+        d.markDirty();
+        d.getPlugin().getJournal().logTransform(d);
     }
 
     /**
@@ -504,7 +510,9 @@ public class DexRotation {
         if (rotation == null) {
             throw new IllegalArgumentException("Rotation cannot be null!");
         }
-        queue.addLast(rotation);
+        queue.addLast(new PendingRotation(rotation, d.getCenter().toVector()));
+        d.markDirty();
+        d.getPlugin().getJournal().logTransform(d);
         if (!processing) {
             dequeue();
         }
@@ -516,8 +524,23 @@ public class DexRotation {
             t = null;
             return;
         }
-        QueuedRotation r = queue.getFirst();
-        queue.removeFirst();
+        bakeInterpolated();
+        PendingRotation first = queue.removeFirst();
+        QueuedRotation r = first.rotation;
+
+        //compose rotations queued behind this one into a single pass over the blocks
+        Quaterniond combined = null;
+        while (!queue.isEmpty() && first.canCoalesce(queue.getFirst())) {
+            if (combined == null) {
+                combined = new Quaterniond(r.getQuaternion());
+            }
+            combined.premul(queue.removeFirst().rotation.getQuaternion()); //apply the later rotation after
+            coalesced++;
+        }
+        if (combined != null) {
+            r = new QueuedRotation(combined, r.isAsync(), r.getTransaction());
+        }
+
         if (r.isAsync()) {
             executeRotationAsync(r);
         } else {
@@ -525,6 +548,15 @@ public class DexRotation {
         }
     }
 
+    /**
+     * Gets the number of queued rotations that were composed into the rotation ahead of them instead of being executed separately
+     *
+     * @return The count since this rotation manager was created
+     */
+    public long getCoalescedCount() {
+        return coalesced;
+    }
+
     /**
      * Clears the queue of scheduled rotations
      */
@@ -532,6 +564,108 @@ public class DexRotation {
         queue.clear();
     }
 
+    /**
+     * Rotates by changing each block's transformation around its current entity position instead of teleporting it,
+     * so the client smoothly interpolates the motion and no move packets are sent.
+     * <p>
+     * The blocks are left with a transformation that does not follow Dexterity convention, so their locations are not updated
+     * until {@link #bakeInterpolated()} is called. This happens automatically before the next queued rotation or edit, before
+     * a player picks or selects blocks near the display, and when their chunk unloads. Saves record the baked locations
+     * without moving the blocks.
+     *
+     * @param q1            The rotation
+     * @param durationTicks The number of ticks for the client to interpolate over, usually the time until the next rotation
+     */
+    public void rotateInterpolated(Quaterniond q1, int durationTicks) {
+        if (q1 == null) {
+            throw new IllegalArgumentException("Quaternion cannot be null!");
+        }
+        if (processing) { //let the queued rotations finish first
+            rotate(q1, false);
+            return;
+        }
+
+        DisplayRotationEvent event = new DisplayRotationEvent(d, q1);
+        Bukkit.getPluginManager().callEvent(event);
+        if (event.isCancelled()) {
+            return;
+        }
+
+        Vector3d centerv = DexUtils.vectord(d.getCenter().toVector()), pc = new Vector3d(), rotated = new Vector3d(), trans = new Vector3d();
+        Quaterniond entityRot = new Quaterniond(), entityRotInv = new Quaterniond(), left = new Quaterniond();
+        double radius = 0;
+        for (DexBlock db : d.getBlocksView()) {
+            Location loc = db.getEntity().getLocation();
+            Transformation cur = db.getEntity().getTransformation();
+            entityRot.identity().rotateY(-Math.toRadians(loc.getYaw())).rotateX(Math.toRadians(loc.getPitch()));
+            entityRot.conjugate(entityRotInv);
+
+            //the pivot stays at the entity's location, so the rotation about the center becomes a translation
+            pc.set(loc.getX() - centerv.x, loc.getY() - centerv.y, loc.getZ() - centerv.z);
+            radius = Math.max(radius, pc.length() + cur.getTranslation().length() + cur.getScale().length());
+            trans.set(cur.getTranslation());
+            q1.transform(entityRot.transform(trans)).add(q1.transform(pc, rotated)).sub(pc);
+            entityRotInv.transform(trans);
+
+            left.set(cur.getLeftRotation());
+            Quaterniond newLeft = new Quaterniond(entityRotInv).mul(q1).mul(entityRot).mul(left);
+
+            db.getEntity().setInterpolationDelay(0);
+            db.getEntity().setInterpolationDuration(durationTicks);
+            db.getEntity().setTransformation(new Transformation(new Vector3f((float) trans.x, (float) trans.y, (float) trans.z),
+                new Quaternionf(newLeft), cur.getScale(), cur.getRightRotation()));
+        }
+
+        interpolated = true;
+        interpolatedRadius = radius;
+        d.markDirty();
+        d.getPlugin().setInterpolated(d, true);
+    }
+
+    /**
+     * @return True if blocks have been rotated with {@link #rotateInterpolated(Quaterniond, int)} and not baked yet
+     */
+    public boolean isInterpolated() {
+        return interpolated;
+    }
+
+    /**
+     * Checks if the blocks rotated by {@link #rotateInterpolated(Quaterniond, int)} may be rendered inside of a box
+     *
+     * @param box
+     * @return False if the blocks are not interpolated or are all outside of the box
+     */
+    public boolean isInterpolatedIn(BoundingBox box) {
+        if (!interpolated) {
+            return false;
+        }
+        Location c = d.getCenter();
+        double dx = Math.max(0, Math.max(box.getMinX() - c.getX(), c.getX() - box.getMaxX())),
+            dy = Math.max(0, Math.max(box.getMinY() - c.getY(), c.getY() - box.getMaxY())),
+            dz = Math.max(0, Math.max(box.getMinZ() - c.getZ(), c.getZ() - box.getMaxZ()));
+        return dx * dx + dy * dy + dz * dz <= interpolatedRadius * interpolatedRadius;
+    }
+
+    /**
+     * Converts the transformations left by {@link #rotateInterpolated(Quaterniond, int)} back into Dexterity convention,
+     * moving each entity to its block's visible location
+     */
+    public void bakeInterpolated() {
+        if (!interpolated) {
+            return;
+        }
+        interpolated = false;
+        d.getPlugin().setInterpolated(d, false);
+        for (DexBlock db : d.getBlocksView()) {
+            if (db.getEntity().isDead()) {
+                continue;
+            }
+            db.getEntity().setInterpolationDuration(0);
+            db.loadTransformationAndRoll();
+        }
+        d.markDirty();
+    }
+
     /**
      * Get the data used for the previous rotation
      *
@@ -556,34 +690,23 @@ public class DexRotation {
             return;
         }
 
+        d.flushPendingEdits(); //start from the blocks' final positions
+
         //y rotation simple
         if (q1.x == 0 && q1.z == 0) {
             last = rot;
             processing = true;
-            simpleRotateY(q1, trans);
+            simpleRotateY(q1, trans, false);
             return;
         }
 
-        if (!rot.equals(last)) {
-            dirs.clear(); //TODO only do this when different rotation
-        }
-
         Vector centerv = d.getCenter().toVector();
         processing = true;
-        for (DexBlock db : d.getBlocks()) {
-            Vector key = new Vector(db.getEntity().getLocation().getPitch(), db.getEntity().getLocation().getYaw(), db.getRoll());
-            Vector dir = dirs.get(key);
-            if (dir == null) {
-                AxisPair a = axisPairs.get(key);
-                if (a == null) {
-                    a = new AxisPair(db);
-                }
-
-                a.transform(q1);
-                dir = a.getPitchYawRoll();
-                dirs.put(key, dir);
-                axisPairs.put(dir, a);
-            }
+        OrientationCache cache = d.getPlugin().getOrientationCache();
+        long rotationKey = OrientationCache.rotationKey(q1);
+        for (DexBlock db : d.getBlocksView()) {
+            Location entityLoc = db.getEntity().getLocation();
+            OrientationCache.Result dir = cache.get(entityLoc.getPitch(), entityLoc.getYaw(), db.getRoll(), q1, rotationKey);
 
             Vector r = db.getLocation().toVector().subtract(centerv);
             Vector3d rTrans = DexUtils.vectord(r);
@@ -591,8 +714,8 @@ public class DexRotation {
 
             Vector offset = DexUtils.vector(rTrans).subtract(r);
             db.move(offset);
-            db.getEntity().setRotation((float) dir.getY(), (float) dir.getX());
-            db.setRoll((float) dir.getZ());
+            db.getEntity().setRotation(dir.yaw, dir.pitch);
+            db.setRoll(dir.roll);
         }
 
         if (trans != null) {
@@ -621,69 +744,41 @@ public class DexRotation {
         if (q1.x == 0 && q1.z == 0) {
             last = rot;
             processing = true;
-            simpleRotateY(q1, trans);
+            simpleRotateY(q1, trans, true);
             return;
         }
 
-        if (!rot.equals(last)) {
-            dirs.clear();
-        }
-
         processing = true;
         Vector centerv = d.getCenter().toVector();
+        //snapshot on the main thread, compute asynchronously, then apply on the main thread
+        ParallelRotation result = new ParallelRotation(new RotationSnapshot(d), q1, centerv, d.getPlugin().getOrientationCache());
         new BukkitRunnable() {
             @Override
             public void run() {
 
-                HashMap<UUID, Vector> offsets = new HashMap<>(), rots = new HashMap<>();
-
-                for (DexBlock db : d.getBlocks()) { //mapping
-                    Vector key = new Vector(db.getEntity().getLocation().getPitch(), db.getEntity().getLocation().getYaw(), db.getRoll());
-                    Vector dir = dirs.get(key);
-                    if (dir == null) {
-                        AxisPair a = axisPairs.get(key);
-                        if (a == null) {
-                            a = new AxisPair(db);
-                        }
-
-                        a.transform(q1);
-                        dir = a.getPitchYawRoll();
-                        dirs.put(key, dir);
-                        axisPairs.put(dir, a);
-                    }
-
-                    Vector r = db.getLocation().toVector().subtract(centerv);
-                    Vector3d r_trans = DexUtils.vectord(r);
-                    q1.transform(r_trans);
-                    Vector offset = DexUtils.vector(r_trans).subtract(r);
-
-                    offsets.put(db.getEntity().getUniqueId(), offset);
-                    rots.put(db.getEntity().getUniqueId(), dir);
-
-                }
+                result.compute();
 
                 new BukkitRunnable() {
                     @Override
                     public void run() {
-                        for (DexBlock db : d.getBlocks()) {
+                        RotationSnapshot snapshot = result.getSnapshot();
 
-                            Vector offset = offsets.get(db.getEntity().getUniqueId()), dir = rots.get(db.getEntity().getUniqueId());
-                            if (offset == null || dir == null) {
-                                continue;
+                        d.getPlugin().getEditApplier().submit(d, snapshot.size(), i -> {
+                            if (!snapshot.isInDisplay(i)) { //removed while computing
+                                return;
+                            }
+                            DexBlock db = snapshot.getBlock(i);
+                            db.move(result.offsetX[i], result.offsetY[i], result.offsetZ[i]);
+                            db.getEntity().setRotation(result.yaw[i], result.pitch[i]);
+                            db.setRoll(result.roll[i]);
+                        }, () -> {
+                            if (trans != null) {
+                                trans.commit();
                             }
 
-                            db.move(offset);
-                            db.getEntity().setRotation((float) dir.getY(), (float) dir.getX());
-                            db.setRoll((float) dir.getZ());
-                        }
-
-                        if (trans != null) {
-                            trans.commit();
-                        }
-
-                        last = rot;
-                        dequeue();
-
+                            last = rot;
+                            dequeue();
+                        });
                     }
                 }.runTask(d.getPlugin());
 
@@ -692,32 +787,39 @@ public class DexRotation {
     }
 
     //if rotating around absolute y axis, only need a simple rotation matrix
-    private void simpleRotateY(Quaterniond q, RotationTransaction trans) {
+    private void simpleRotateY(Quaterniond q, RotationTransaction trans, boolean async) {
         float rad = 2 * (float) Math.asin(q.y);
-        double cosy = Math.cos(rad), siny = Math.sin(rad);
-        float deg = (float) Math.toDegrees(rad);
-
-        Matrix3d rotmat = new Matrix3d(
-            cosy, 0, -siny,
-            0, 1, 0,
-            siny, 0, cosy
-        );
         Vector centerv = d.getCenter().toVector();
+        YawRotation result = new YawRotation(new RotationSnapshot(d), rad, centerv.getX(), centerv.getZ());
+        RotationSnapshot snapshot = result.getSnapshot();
 
-        for (DexBlock db : d.getBlocks()) {
-            Vector3d r = DexUtils.vectord(db.getLocation().toVector().subtract(centerv));
-            rotmat.transform(r);
-            Location to = DexUtils.location(d.getWorld(), DexUtils.vector(r).add(centerv));
-            to.setYaw(db.getEntity().getLocation().getYaw() - deg);
-            to.setPitch(db.getEntity().getLocation().getPitch());
+        IntConsumer apply = i -> {
+            if (!snapshot.isInDisplay(i)) {
+                return;
+            }
+            //moved relative to the snapshot so that a synchronous edit made between slices is kept
+            DexBlock db = snapshot.getBlock(i);
+            Location to = db.getEntity().getLocation().add(result.x[i] - snapshot.getX(i), result.y[i] - snapshot.getY(i), result.z[i] - snapshot.getZ(i));
+            to.setYaw(result.yaw[i]);
+            to.setPitch(result.pitch[i]);
             db.teleport(to);
-        }
+        };
+        Runnable complete = () -> {
+            if (trans != null) {
+                trans.commit();
+            }
 
-        if (trans != null) {
-            trans.commit();
-        }
+            dequeue();
+        };
 
-        dequeue();
+        if (async) {
+            d.getPlugin().getEditApplier().submit(d, snapshot.size(), apply, complete);
+            return;
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            apply.accept(i);
+        }
+        complete.run();
     }
 
     /**
@@ -737,4 +839,23 @@ public class DexRotation {
         points.add(d.getPlugin().api().markerPoint(d.getCenter().add(DexUtils.vector(z)), Color.BLUE, seconds));
         points.add(d.getPlugin().api().markerPoint(d.getCenter(), Color.SILVER, seconds));
     }
+
+    private static class PendingRotation {
+        final QueuedRotation rotation;
+        final Vector center;
+
+        PendingRotation(QueuedRotation rotation, Vector center) {
+            this.rotation = rotation;
+            this.center = center;
+        }
+
+        /**
+         * @param next
+         * @return True if the next rotation can be composed into this one, so the blocks are only moved once
+         */
+        boolean canCoalesce(PendingRotation next) {
+            return rotation.isAsync() == next.rotation.isAsync() && rotation.getTransaction() == next.rotation.getTransaction()
+                && center.distanceSquared(next.center) < cutoff;
+        }
+    }
 }
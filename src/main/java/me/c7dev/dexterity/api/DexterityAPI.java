@@ -12,14 +12,16 @@ import me.c7dev.dexterity.util.DexBlock;
 import me.c7dev.dexterity.util.DexBlockState;
 import me.c7dev.dexterity.util.DexUtils;
 import me.c7dev.dexterity.util.Mask;
+import me.c7dev.dexterity.util.OrientedBoxRaycast;
 import me.c7dev.dexterity.util.OrientationKey;
 import me.c7dev.dexterity.util.RollOffset;
 import me.c7dev.dexterity.util.SavedBlockState;
 import org.bukkit.Bukkit;
-import org.bukkit.Chunk;
 import org.bukkit.Color;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.data.BlockData;
@@ -27,10 +29,9 @@ import org.bukkit.entity.BlockDisplay;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.util.BoundingBox;
 import org.bukkit.util.Transformation;
 import org.bukkit.util.Vector;
-import org.joml.Matrix3d;
-import org.joml.Matrix3f;
 import org.joml.Quaternionf;
 import org.joml.Vector3f;
 
@@ -38,19 +39,27 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class DexterityAPI {
 
+    private static final double PICK_RADIUS = 4, PICK_RAY_LENGTH = 10; //ray length covers the far corner of the pick box from the eye
     private final Dexterity plugin;
     private final HashMap<UUID, Integer> pidMap = new HashMap<>();
-    private final List<UUID> markerPoints = new ArrayList<>();
+    private final Set<UUID> markerPoints = new HashSet<>();
     private final HashMap<OrientationKey, RollOffset> rollOffsets = new HashMap<>();
     private final HashMap<OrientationKey, Vector[]> axes = new HashMap<>();
-    private final Vector[][] basisVecsNoRot = getBasisVecs(new Matrix3d(1, 0, 0, 0, 1, 0, 0, 0, 1));
+    private final HashMap<UUID, PickCache> pickCache = new HashMap<>();
+    private final OrientedBoxRaycast raycast = new OrientedBoxRaycast(); //scratch state for getLookingAt, main thread only
     private final Vector eastUnit = new Vector(1, 0, 0), upUnit = new Vector(0, 1, 0), southUnit = new Vector(0, 0, 1);
+    private final Vector pickScale = new Vector(), pickHalfScale = new Vector(); //scratch state for intersect, main thread only
+    private final Location pickLoc = new Location(null, 0, 0, 0);
+    private final OrientationKey pickKey = new OrientationKey(0, 0, null);
+    private final HashMap<BlockData, Vector> blockDimensions = new HashMap<>();
     private final BlockFace[] faces = {
         BlockFace.UP,
         BlockFace.DOWN,
@@ -136,6 +145,38 @@ public class DexterityAPI {
         return plugin.getDisplayLabels(p);
     }
 
+    /**
+     * Asynchronously finds the labels of saved displays in a world. With the SQLite display storage this includes
+     * displays that are not loaded, otherwise only loaded displays are searched.
+     *
+     * @param world
+     * @return Future of the label strings
+     */
+    public CompletableFuture<Set<String>> queryDisplayLabels(World world) {
+        return plugin.queryDisplayLabels(world);
+    }
+
+    /**
+     * Asynchronously finds the labels of saved displays that the player is an owner of. With the SQLite display storage
+     * this includes displays that are not loaded, otherwise only loaded displays are searched.
+     *
+     * @param owner
+     * @return Future of the label strings
+     */
+    public CompletableFuture<Set<String>> queryDisplayLabels(OfflinePlayer owner) {
+        return plugin.queryDisplayLabels(owner);
+    }
+
+    /**
+     * Asynchronously finds the label of the saved display that a block display entity belongs to
+     *
+     * @param block UUID of the block display entity
+     * @return Future of the label, or null if the entity is not in a saved display
+     */
+    public CompletableFuture<String> queryDisplayLabel(UUID block) {
+        return plugin.queryDisplayLabel(block);
+    }
+
     /**
      * Returns all displays that have been saved across all worlds
      *
@@ -251,21 +292,32 @@ public class DexterityAPI {
         return f.exists();
     }
 
-    private Vector[][] getBasisVecs(Matrix3d mat) {
-        Vector a = new Vector(mat.m00, mat.m01, mat.m02).normalize(),
-            b = new Vector(mat.m10, mat.m11, mat.m12).normalize(),
-            c = new Vector(mat.m20, mat.m21, mat.m22).normalize();
-        Vector[][] basisVecs = {{a, c}, {a, c}, {a, b}, {a.clone().multiply(-1), b}, {c.clone().multiply(-1), b}, {c, b}};
-        return basisVecs;
+    /**
+     * Clears the player's cached ray cast results so that the next call to {@link #getLookingAt(Player)} or
+     * {@link #getPhysicalBlockLookingAtRaw(Player, double, double)} casts again
+     *
+     * @param p
+     */
+    public void invalidatePickCache(Player p) {
+        pickCache.remove(p.getUniqueId());
     }
 
-    private Vector[][] getBasisVecs(Vector a, Vector b, Vector c) {
-        Vector[][] basisVecs = {{a, c}, {a, c}, {a, b}, {a.clone().multiply(-1), b}, {c.clone().multiply(-1), b}, {c, b}};
-        return basisVecs;
+    //results are reused within the same tick while the player's eye and the blocks in the world have not moved
+    private PickCache getPickCache(Player p) {
+        Location eye = p.getEyeLocation();
+        int tick = Bukkit.getCurrentTick();
+        long modCount = plugin.getBlockIndex().getModCount(eye.getWorld());
+        PickCache cache = pickCache.get(p.getUniqueId());
+        if (cache == null || cache.tick != tick || cache.modCount != modCount || !cache.eye.equals(eye)) {
+            cache = new PickCache(tick, eye, modCount);
+            pickCache.put(p.getUniqueId(), cache);
+        }
+        return cache;
     }
 
     /**
-     * Calculates the precise block display entity that the player is currently looking at with their cursor
+     * Calculates the precise block display entity that the player is currently looking at with their cursor.
+     * The result is cached for the rest of the tick, so other plugins can call this without casting the ray again.
      *
      * @param p
      * @return Unmodifiable data object containing the entity, entity's center, block face, location on the block face, and basis vectors.
@@ -275,180 +327,174 @@ public class DexterityAPI {
         if (p == null) {
             throw new IllegalArgumentException("Player cannot be null!");
         }
-        List<Entity> near = p.getNearbyEntities(4, 4, 4);
+        PickCache cache = getPickCache(p);
+        if (!cache.hasDisplay) {
+            cache.display = castLookingAt(p);
+            cache.hasDisplay = true;
+        }
+        return cache.display;
+    }
+
+    private ClickedBlockDisplay castLookingAt(Player p) {
+        BoundingBox pickBox = p.getBoundingBox().expand(PICK_RADIUS); //same box as the nearby entity search
+        plugin.bakeInterpolated(p.getWorld(), pickBox);
         Vector dir = p.getLocation().getDirection();
         Vector eyeLoc = p.getEyeLocation().toVector();
-        double minDist = Double.MAX_VALUE;
         ClickedBlockDisplay nearest = null;
 
-        bdLoop:
-        for (Entity entity : near) {
-            if (!(entity instanceof BlockDisplay e) || markerPoints.contains(entity.getUniqueId())) {
+        //managed blocks are found with the spatial index
+        for (DexBlock db : plugin.getBlockIndex().raycast(p.getWorld(), eyeLoc, dir, PICK_RAY_LENGTH)) {
+            BlockDisplay e = db.getEntity();
+            if (e.isDead() || !inBox(pickBox, e) || markerPoints.contains(e.getUniqueId())
+                || plugin.getMappedDisplay(e.getUniqueId()) != db) { //replaced by a newer wrapper of the entity
                 continue;
             }
-            Vector scaleRaw = DexUtils.vector(e.getTransformation().getScale());
-            if (scaleRaw.getX() < 0 || scaleRaw.getY() < 0 || scaleRaw.getZ() < 0) {
-                continue; //TODO figure out displacement to center
+            ClickedBlockDisplay hit = intersect(e, db, eyeLoc, dir, nearest == null ? Double.MAX_VALUE : nearest.getDistance());
+            if (hit != null) {
+                nearest = hit;
             }
-            scaleRaw.multiply(0.5);
-            Vector scale = DexUtils.hadimard(DexUtils.getBlockDimensions(e.getBlock()), scaleRaw);
-
-            //check if the player is looking in the general direction of the block, accounting for scale
-            Vector diff = e.getLocation().toVector().subtract(eyeLoc).normalize();
-            double dot = diff.dot(dir);
-            if (dot < (-0.375 * scale.lengthSquared()) + 0.75) {
-                continue; //TODO: taylor series to improve the approximation
-            }
-
-            Vector upDir, southDir, eastDir;
-            Vector[][] basisVecs;
-            DexBlock db = plugin.getMappedDisplay(e.getUniqueId());
+        }
 
-            //calculate roll and its offset
-            RollOffset ro = null;
-            Location loc;
-            if (db == null) {
-                Vector displacement = DexUtils.vector(e.getTransformation().getTranslation());
-                if (e.getTransformation().getLeftRotation().w != 0) {
-                    OrientationKey key = new OrientationKey(e.getTransformation().getScale().x,
-                        e.getTransformation().getScale().y,
-                        e.getTransformation().getLeftRotation());
-                    ro = rollOffsets.get(key); //does not account for pitch and yaw built into the rotation quaternion, assumed that blocks managed by other plugins are not built on
-                    if (ro == null) {
-                        ro = new RollOffset(e.getTransformation().getLeftRotation(), DexUtils.vector(e.getTransformation().getScale()));
-                        rollOffsets.put(key, ro);
-                    }
-                    displacement.subtract(ro.getOffset());
-                }
-                loc = e.getLocation().add(displacement).add(scaleRaw);
-            } else {
-                loc = db.getLocation(); //already handled by DexTransformation
+        //block displays not managed by Dexterity
+        for (BlockDisplay e : plugin.getDisplayIndex().getInBox(p.getWorld(), pickBox.getMinX(), pickBox.getMinY(), pickBox.getMinZ(), pickBox.getMaxX(), pickBox.getMaxY(), pickBox.getMaxZ())) {
+            if (!inBox(pickBox, e) || markerPoints.contains(e.getUniqueId()) || plugin.getMappedDisplay(e.getUniqueId()) != null) {
+                continue;
             }
-
-            //if rotated, we need to transform the displacement vecs and basis vectors accordingly
-            if (e.getLocation().getYaw() != 0 || e.getLocation().getPitch() != 0 || e.getTransformation().getLeftRotation().w != 1) {
-
-                OrientationKey key = new OrientationKey(e.getLocation().getYaw(), e.getLocation().getPitch(), e.getTransformation().getLeftRotation());
-                Vector[] res = axes.get(key);
-                if (res == null) {
-                    Vector3f east_dir_d = new Vector3f(1, 0, 0), up_dir_d = new Vector3f(0, 1, 0), south_dir_d = new Vector3f(0, 0, 1);
-                    Quaternionf q = DexUtils.cloneQ(e.getTransformation().getLeftRotation());
-                    q.z = -q.z;
-                    q.rotateX((float) -Math.toRadians(e.getLocation().getPitch()));
-                    q.rotateY((float) Math.toRadians(e.getLocation().getYaw()));
-
-                    q.transformInverse(east_dir_d);
-                    q.transformInverse(up_dir_d);
-                    q.transformInverse(south_dir_d);
-
-                    eastDir = DexUtils.vector(east_dir_d);
-                    upDir = DexUtils.vector(up_dir_d);
-                    southDir = DexUtils.vector(south_dir_d);
-                    basisVecs = getBasisVecs(eastDir, upDir, southDir);
-
-                    Vector[] res2 = {eastDir, upDir, southDir};
-                    axes.put(key, res2);
-
-                } else {
-                    eastDir = res[0];
-                    upDir = res[1];
-                    southDir = res[2];
-                    basisVecs = getBasisVecs(eastDir, upDir, southDir);
-                }
-            } else {
-                eastDir = eastUnit;
-                upDir = upUnit;
-                southDir = southUnit;
-                basisVecs = basisVecsNoRot;
+            ClickedBlockDisplay hit = intersect(e, null, eyeLoc, dir, nearest == null ? Double.MAX_VALUE : nearest.getDistance());
+            if (hit != null) {
+                nearest = hit;
             }
+        }
 
-            //calculate location of visual display accounting for axis asymmetry
-            loc.add(upDir.clone().multiply(scale.getY() - scaleRaw.getY()));
-            Vector locv = loc.toVector();
-
-            //block face centers
-            Vector up = locv.clone().add(upDir.clone().multiply(scale.getY())),
-                down = locv.clone().add(upDir.clone().multiply(-scale.getY())),
-                south = locv.clone().add(southDir.clone().multiply(scale.getZ())),
-                north = locv.clone().add(southDir.clone().multiply(-scale.getZ())),
-                east = locv.clone().add(eastDir.clone().multiply(scale.getX())),
-                west = locv.clone().add(eastDir.clone().multiply(-scale.getX()));
+        return nearest;
+    }
 
-            Vector[] locs = {up, down, south, north, east, west};
+    /**
+     * Finds the nearest face of the block display that the ray hits
+     *
+     * @param db      The managed block of the entity, or null if unmanaged
+     * @param minDist Only hits closer than this are returned
+     * @return The hit, or null if the ray misses or is not closer than minDist
+     */
+    private ClickedBlockDisplay intersect(BlockDisplay e, DexBlock db, Vector eyeLoc, Vector dir, double minDist) {
+        Transformation t = null;
+        Quaternionf leftRot;
+        if (db == null) {
+            t = e.getTransformation();
+            pickHalfScale.setX(t.getScale().x).setY(t.getScale().y).setZ(t.getScale().z);
+            leftRot = t.getLeftRotation();
+        } else { //already cached in the DexTransformation
+            pickHalfScale.copy(db.getTransformation().getScale());
+            leftRot = db.getTransformation().getLeftRotation();
+        }
+        if (pickHalfScale.getX() < 0 || pickHalfScale.getY() < 0 || pickHalfScale.getZ() < 0) {
+            return null; //TODO figure out displacement to center
+        }
+        pickHalfScale.multiply(0.5);
+        Vector scale = pickScale.copy(getBlockDimensions(e.getBlock())).multiply(pickHalfScale);
+        Vector scaleRaw = pickHalfScale;
+
+        //check if the player is looking in the general direction of the block, accounting for scale
+        e.getLocation(pickLoc);
+        double diffX = pickLoc.getX() - eyeLoc.getX(), diffY = pickLoc.getY() - eyeLoc.getY(), diffZ = pickLoc.getZ() - eyeLoc.getZ();
+        double dot = (diffX * dir.getX() + diffY * dir.getY() + diffZ * dir.getZ()) / Math.sqrt(diffX * diffX + diffY * diffY + diffZ * diffZ);
+        if (dot < (-0.375 * scale.lengthSquared()) + 0.75) {
+            return null; //TODO: taylor series to improve the approximation
+        }
 
-            boolean firstFace = false; //always intersects 2 faces - convex
-            for (int i = 0; i < locs.length; i++) {
-                if (!firstFace && i == locs.length - 1) {
-                    continue bdLoop; //not looking at this block, no need to check last face
+        Vector upDir, southDir, eastDir;
+
+        //calculate roll and its offset
+        RollOffset ro = null;
+        double cx = pickLoc.getX() + scaleRaw.getX(), cy = pickLoc.getY() + scaleRaw.getY(), cz = pickLoc.getZ() + scaleRaw.getZ();
+        if (db == null) {
+            cx += t.getTranslation().x;
+            cy += t.getTranslation().y;
+            cz += t.getTranslation().z;
+            if (leftRot.w != 0) {
+                ro = rollOffsets.get(pickKey.set(t.getScale().x, t.getScale().y, leftRot)); //does not account for pitch and yaw built into the rotation quaternion, assumed that blocks managed by other plugins are not built on
+                if (ro == null) {
+                    ro = new RollOffset(leftRot, DexUtils.vector(t.getScale()));
+                    rollOffsets.put(new OrientationKey(t.getScale().x, t.getScale().y, leftRot), ro);
                 }
+                cx -= ro.getOffset().getX();
+                cy -= ro.getOffset().getY();
+                cz -= ro.getOffset().getZ();
+            }
+        } else { //displacement and roll offset already handled by DexTransformation
+            Vector displacement = db.getTransformation().getDisplacement();
+            cx += displacement.getX();
+            cy += displacement.getY();
+            cz += displacement.getZ();
+        }
 
-                Vector basis1 = basisVecs[i][0], basis2 = basisVecs[i][1];
-
-                // Solve `(FaceCenter) + a(basis1) + b(basis2) = c(dir) + (EyeLoc)` to find intersection of block face plane
-                Vector L = eyeLoc.clone().subtract(locs[i]);
-                Matrix3f matrix = new Matrix3f(
-                    (float) basis1.getX(), (float) basis1.getY(), (float) basis1.getZ(),
-                    (float) basis2.getX(), (float) basis2.getY(), (float) basis2.getZ(),
-                    (float) dir.getX(), (float) dir.getY(), (float) dir.getZ()
-                );
-                matrix.invert();
-                Vector3f cf = new Vector3f();
-                Vector soln = DexUtils.vector(matrix.transform(DexUtils.vector(L), cf));
-                double dist = -soln.getZ(); //distance from player's eye to precise location on surface in units of blocks (magic :3)
-                if (dist < 0) {
-                    continue; //behind head
-                }
+        //if rotated, we need to transform the displacement vecs and basis vectors accordingly
+        if (pickLoc.getYaw() != 0 || pickLoc.getPitch() != 0 || leftRot.w != 1) {
 
-                switch (i) { //check within block face
-                    case 0:
-                    case 1:
-                        if (Math.abs(soln.getX()) > scale.getX()) {
-                            continue;
-                        }
-                        if (Math.abs(soln.getY()) > scale.getZ()) {
-                            continue;
-                        }
-                        break;
-                    case 2:
-                    case 3:
-                        if (Math.abs(soln.getX()) > scale.getX()) {
-                            continue;
-                        }
-                        if (Math.abs(soln.getY()) > scale.getY()) {
-                            continue;
-                        }
-                        break;
-                    default:
-                        if (Math.abs(soln.getX()) > scale.getZ()) {
-                            continue;
-                        }
-                        if (Math.abs(soln.getY()) > scale.getY()) {
-                            continue;
-                        }
-                }
+            Vector[] res = axes.get(pickKey.set(pickLoc.getYaw(), pickLoc.getPitch(), leftRot));
+            if (res == null) {
+                Vector3f east_dir_d = new Vector3f(1, 0, 0), up_dir_d = new Vector3f(0, 1, 0), south_dir_d = new Vector3f(0, 0, 1);
+                Quaternionf q = DexUtils.cloneQ(leftRot);
+                q.z = -q.z;
+                q.rotateX((float) -Math.toRadians(pickLoc.getPitch()));
+                q.rotateY((float) Math.toRadians(pickLoc.getYaw()));
 
-                if (dist < minDist) {
-                    Vector rawOffset = basis1.clone().multiply(soln.getX())
-                        .add(basis2.clone().multiply(soln.getY()));
-                    Vector blockoffset = locs[i].clone().add(rawOffset); //surface location
+                q.transformInverse(east_dir_d);
+                q.transformInverse(up_dir_d);
+                q.transformInverse(south_dir_d);
 
-                    minDist = dist;
-                    nearest = new ClickedBlockDisplay(e, faces[i], rawOffset, DexUtils.location(loc.getWorld(), blockoffset),
-                        loc, upDir, eastDir, southDir, dist);
-                    if (ro != null) {
-                        nearest.setRollOffset(ro);
-                    }
-                }
+                eastDir = DexUtils.vector(east_dir_d);
+                upDir = DexUtils.vector(up_dir_d);
+                southDir = DexUtils.vector(south_dir_d);
 
-                if (firstFace) {
-                    continue bdLoop;
-                } else {
-                    firstFace = true;
-                }
+                Vector[] res2 = {eastDir, upDir, southDir};
+                axes.put(new OrientationKey(pickLoc.getYaw(), pickLoc.getPitch(), DexUtils.cloneQ(leftRot)), res2);
+
+            } else {
+                eastDir = res[0];
+                upDir = res[1];
+                southDir = res[2];
             }
+        } else {
+            eastDir = eastUnit;
+            upDir = upUnit;
+            southDir = southUnit;
         }
 
-        return nearest;
+        //calculate location of visual display accounting for axis asymmetry
+        double shift = scale.getY() - scaleRaw.getY();
+        cx += upDir.getX() * shift;
+        cy += upDir.getY() * shift;
+        cz += upDir.getZ() * shift;
+        if (!raycast.intersect(eyeLoc.getX(), eyeLoc.getY(), eyeLoc.getZ(), dir.getX(), dir.getY(), dir.getZ(),
+            cx, cy, cz, eastDir, upDir, southDir, scale.getX(), scale.getY(), scale.getZ()) || raycast.distance >= minDist) {
+            return null;
+        }
+        Location loc = new Location(pickLoc.getWorld(), cx, cy, cz, pickLoc.getYaw(), pickLoc.getPitch());
+
+        //offset of the hit from the center of the block face
+        Vector hit = new Vector(raycast.hitX, raycast.hitY, raycast.hitZ);
+        Vector faceCenter = switch (raycast.face) {
+            case OrientedBoxRaycast.FACE_UP -> upDir.clone().multiply(scale.getY());
+            case OrientedBoxRaycast.FACE_DOWN -> upDir.clone().multiply(-scale.getY());
+            case OrientedBoxRaycast.FACE_SOUTH -> southDir.clone().multiply(scale.getZ());
+            case OrientedBoxRaycast.FACE_NORTH -> southDir.clone().multiply(-scale.getZ());
+            case OrientedBoxRaycast.FACE_EAST -> eastDir.clone().multiply(scale.getX());
+            default -> eastDir.clone().multiply(-scale.getX());
+        };
+        faceCenter.add(loc.toVector());
+        Vector rawOffset = hit.clone().subtract(faceCenter);
+
+        ClickedBlockDisplay r = new ClickedBlockDisplay(e, faces[raycast.face], rawOffset, DexUtils.location(loc.getWorld(), hit),
+            loc, upDir, eastDir, southDir, raycast.distance);
+        if (ro != null) {
+            r.setRollOffset(ro);
+        }
+        return r;
+    }
+
+    private Vector getBlockDimensions(BlockData b) { //the returned vector is shared and must not be modified
+        return blockDimensions.computeIfAbsent(b, DexUtils::getBlockDimensions);
     }
 
     /**
@@ -459,51 +505,73 @@ public class DexterityAPI {
      * @return Null if the player is not looking at any block in range.
      */
     public ClickedBlock getPhysicalBlockLookingAt(Player p) {
-        return getPhysicalBlockLookingAtRaw(p, 0.01, 5); // same as getBlockLookingAt(p, 100);
+        return getPhysicalBlockLookingAtRaw(p, 0.01, 5);
     }
 
     /**
-     * Calculates the precise placed block that the player is currently looking at with their cursor
+     * Calculates the precise placed block that the player is currently looking at with their cursor.
+     * The result is cached for the rest of the tick for the same maximum distance.
      *
      * @param p
-     * @param stepMultiplier Defines the step size, and thus the precision to check
+     * @param stepMultiplier Unused, the ray is traversed exactly one block space at a time
      * @param maxDist        Defines the maximum radius, in blocks, to search
      * @return Unmodifiable data object containing the block and distance (in block units) away.
      * @return Null if the player is not looking at any block in range.
      */
     public ClickedBlock getPhysicalBlockLookingAtRaw(Player p, double stepMultiplier, double maxDist) {
-        Vector step = p.getLocation().getDirection().multiply(stepMultiplier);
-
-        Location loc = p.getEyeLocation();
-        int i = 0, max = (int) (maxDist / stepMultiplier);
-        Block b = null;
-        boolean found = false;
-        while (i < max) {
-            loc.add(step);
-            i++;
-            b = loc.getBlock();
-            if (b.getType() == Material.AIR) {
-                continue;
-            }
-
-            Vector size = DexUtils.getBlockDimensions(b.getBlockData());
-            size.setX(size.getX() / 2);
-            size.setZ(size.getZ() / 2);
-            Vector locv = b.getLocation().add(0.5, 0, 0.5).toVector(); //TODO add 0.5 to y for upper slabs
-            Vector l1 = locv.clone().subtract(size.clone().setY(0)), l2 = locv.clone().add(size);
+        PickCache cache = getPickCache(p);
+        if (!cache.hasBlock || cache.blockMaxDist != maxDist) {
+            cache.block = castPhysicalBlockLookingAt(p, maxDist);
+            cache.blockMaxDist = maxDist;
+            cache.hasBlock = true;
+        }
+        return cache.block;
+    }
 
-            if (loc.getX() >= l1.getX() && loc.getX() <= l2.getX() &&
-                loc.getY() >= l1.getY() && loc.getY() <= l2.getY() &&
-                loc.getZ() >= l1.getZ() && loc.getZ() <= l2.getZ()) {
-                found = true;
-                break;
+    private ClickedBlock castPhysicalBlockLookingAt(Player p, double maxDist) {
+        Location eye = p.getEyeLocation();
+        Vector dir = eye.getDirection();
+        World world = eye.getWorld();
+        double ox = eye.getX(), oy = eye.getY(), oz = eye.getZ(), dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+
+        //Amanatides-Woo traversal of every block space the ray passes through, in order
+        int x = (int) Math.floor(ox), y = (int) Math.floor(oy), z = (int) Math.floor(oz);
+        int stepX = (int) Math.signum(dx), stepY = (int) Math.signum(dy), stepZ = (int) Math.signum(dz);
+        double tDeltaX = stepX == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dx),
+            tDeltaY = stepY == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dy),
+            tDeltaZ = stepZ == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dz);
+        double tMaxX = stepX == 0 ? Double.POSITIVE_INFINITY : (stepX > 0 ? x + 1 - ox : ox - x) * tDeltaX,
+            tMaxY = stepY == 0 ? Double.POSITIVE_INFINITY : (stepY > 0 ? y + 1 - oy : oy - y) * tDeltaY,
+            tMaxZ = stepZ == 0 ? Double.POSITIVE_INFINITY : (stepZ > 0 ? z + 1 - oz : oz - z) * tDeltaZ;
+
+        double t = 0;
+        while (t <= maxDist) {
+            Block b = world.getBlockAt(x, y, z);
+            if (!b.getType().isAir()) {
+                BlockData data = b.getBlockData();
+                Vector size = DexUtils.getBlockDimensions(data);
+                double minY = y + DexUtils.getBlockMinY(data);
+                if (raycast.intersect(ox, oy, oz, dx, dy, dz, x + 0.5, minY + (size.getY() / 2), z + 0.5,
+                    eastUnit, upUnit, southUnit, size.getX() / 2, size.getY() / 2, size.getZ() / 2) && raycast.distance <= maxDist) {
+                    return new ClickedBlock(b, raycast.distance);
+                }
             }
-        }
 
-        if (!found || b == null || b.getType() == Material.AIR) {
-            return null;
+            if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+                x += stepX;
+                t = tMaxX;
+                tMaxX += tDeltaX;
+            } else if (tMaxY < tMaxZ) {
+                y += stepY;
+                t = tMaxY;
+                tMaxY += tDeltaY;
+            } else {
+                z += stepZ;
+                t = tMaxZ;
+                tMaxZ += tDeltaZ;
+            }
         }
-        return new ClickedBlock(b, i * stepMultiplier);
+        return null;
     }
 
     /**
@@ -517,7 +585,7 @@ public class DexterityAPI {
 
         //start clone
         List<DexBlock> blocks = new ArrayList<>();
-        for (DexBlock db : d.getBlocks()) {
+        for (DexBlock db : d.getBlocksView()) {
             DexBlockState state = db.getState();
             state.setDisplay(clone);
             state.setUniqueId(null);
@@ -748,7 +816,7 @@ public class DexterityAPI {
      */
     public void tempHighlight(DexterityDisplay d, int ticks, Color c) {
         List<BlockDisplay> blocks = new ArrayList<>();
-        for (DexBlock db : d.getBlocks()) {
+        for (DexBlock db : d.getBlocksView()) {
             blocks.add(db.getEntity());
         }
         tempHighlight(blocks, ticks, c);
@@ -767,7 +835,14 @@ public class DexterityAPI {
         tempHighlight(blocks, ticks, c);
     }
 
-    private void tempHighlight(List<BlockDisplay> blocks, int ticks, Color c) {
+    /**
+     * Temporarily makes block displays glow for a period of time if they are not glowing already.
+     *
+     * @param blocks The block displays to highlight
+     * @param ticks  The number of ticks (0.05 of a second) until the highlighting is reset.
+     * @param c      The color to highlight with.
+     */
+    public void tempHighlight(List<BlockDisplay> blocks, int ticks, Color c) {
         List<UUID> unhighlight = new ArrayList<>();
         int pid = getNewPID();
         for (BlockDisplay block : blocks) {
@@ -801,7 +876,7 @@ public class DexterityAPI {
         if (d == null) {
             return;
         }
-        for (DexBlock db : d.getBlocks()) {
+        for (DexBlock db : d.getBlocksView()) {
             if (isInProcess(db.getEntity().getUniqueId())) {
                 db.getEntity().setGlowing(false);
             }
@@ -840,55 +915,78 @@ public class DexterityAPI {
      * @return Unmodifiable list of Block Display entities that are within the cuboid
      */
     public List<BlockDisplay> getBlockDisplaysInRegionContinuous(Location l1r, Location l2r, Vector l1o, Vector l2o) {
+        return getBlockDisplaysInBox(l1r.getWorld(), getRegionBox(l1r, l2r, l1o, l2o));
+    }
+
+    /**
+     * Gets the cuboid used to select block displays between two continuous locations
+     *
+     * @param l1r The first location
+     * @param l2r The second location
+     * @param l1o The offset subtracted from the minimum of the coordinates
+     * @param l2o The offset added to the maximum of the coordinates
+     * @return The cuboid, with all bounds inclusive
+     */
+    public BoundingBox getRegionBox(Location l1r, Location l2r, Vector l1o, Vector l2o) {
+        return new BoundingBox(l1r.getX(), l1r.getY(), l1r.getZ(), l2r.getX(), l2r.getY(), l2r.getZ())
+            .expand(l1o.getX(), l1o.getY(), l1o.getZ(), l2o.getX(), l2o.getY(), l2o.getZ());
+    }
+
+    /**
+     * Retrieves all of the block display entities within the cuboid
+     *
+     * @param w   The world of the block displays
+     * @param box The cuboid, with all bounds inclusive
+     * @return List of Block Display entities that are within the cuboid
+     */
+    public List<BlockDisplay> getBlockDisplaysInBox(World w, BoundingBox box) {
+        plugin.bakeInterpolated(w, box);
         List<BlockDisplay> blocks = new ArrayList<>();
+        for (BlockDisplay bd : plugin.getDisplayIndex().getInBox(w, box.getMinX(), box.getMinY(), box.getMinZ(), box.getMaxX(), box.getMaxY(), box.getMaxZ())) {
+            if (!markerPoints.contains(bd.getUniqueId()) && inBox(box, bd)) {
+                blocks.add(bd);
+            }
+        }
+        return blocks;
+    }
 
-        Location l1 = l1r.clone(), l2 = l2r.clone();
+    private static boolean inBox(BoundingBox box, BlockDisplay bd) {
+        double x = bd.getX(), y = bd.getY(), z = bd.getZ();
+        return x >= box.getMinX() && x <= box.getMaxX()
+            && y >= box.getMinY() && y <= box.getMaxY()
+            && z >= box.getMinZ() && z <= box.getMaxZ();
+    }
 
-        if (l1.getX() > l2.getX()) {
-            double xt = l1.getX();
-            l1.setX(l2.getX());
-            l2.setX(xt);
+    /**
+     * Splits the part of box a that is outside of box b into at most 6 boxes
+     */
+    private static List<BoundingBox> subtractBox(BoundingBox a, BoundingBox b) {
+        List<BoundingBox> r = new ArrayList<>();
+        if (!a.overlaps(b)) {
+            r.add(a);
+            return r;
         }
-        if (l1.getY() > l2.getY()) {
-            double yt = l1.getY();
-            l1.setY(l2.getY());
-            l2.setY(yt);
+        double x1 = Math.max(a.getMinX(), b.getMinX()), x2 = Math.min(a.getMaxX(), b.getMaxX()),
+            y1 = Math.max(a.getMinY(), b.getMinY()), y2 = Math.min(a.getMaxY(), b.getMaxY());
+        if (a.getMinX() < b.getMinX()) {
+            r.add(new BoundingBox(a.getMinX(), a.getMinY(), a.getMinZ(), b.getMinX(), a.getMaxY(), a.getMaxZ()));
         }
-        if (l1.getZ() > l2.getZ()) {
-            double zt = l1.getZ();
-            l1.setZ(l2.getZ());
-            l2.setZ(zt);
+        if (a.getMaxX() > b.getMaxX()) {
+            r.add(new BoundingBox(b.getMaxX(), a.getMinY(), a.getMinZ(), a.getMaxX(), a.getMaxY(), a.getMaxZ()));
         }
-
-        l1.subtract(l1o);
-        l2.add(l2o);
-
-        int xchunks = (int) Math.ceil((l2.getX() - l1.getX()) / 16) + 1;
-        int zchunks = (int) Math.ceil((l2.getZ() - l1.getZ()) / 16) + 1;
-        Location sel = l1.clone();
-        for (int x = 0; x < xchunks; x++) {
-            Location xsel = sel.clone();
-            for (int z = 0; z < zchunks; z++) {
-                Chunk chunk = xsel.getChunk();
-                if (!chunk.isLoaded()) {
-                    continue;
-                }
-                for (Entity entity : chunk.getEntities()) {
-                    if (entity instanceof BlockDisplay bd && !markerPoints.contains(entity.getUniqueId())) {
-                        if (entity.getLocation().getX() >= l1.getX() && entity.getLocation().getX() <= l2.getX()
-                            && entity.getLocation().getY() >= l1.getY() && entity.getLocation().getY() <= l2.getY()
-                            && entity.getLocation().getZ() >= l1.getZ() && entity.getLocation().getZ() <= l2.getZ()) {
-
-                            blocks.add(bd);
-                        }
-                    }
-                }
-                xsel.add(0, 0, 16);
-            }
-            sel.add(16, 0, 0);
+        if (a.getMinY() < b.getMinY()) {
+            r.add(new BoundingBox(x1, a.getMinY(), a.getMinZ(), x2, b.getMinY(), a.getMaxZ()));
         }
-
-        return blocks;
+        if (a.getMaxY() > b.getMaxY()) {
+            r.add(new BoundingBox(x1, b.getMaxY(), a.getMinZ(), x2, a.getMaxY(), a.getMaxZ()));
+        }
+        if (a.getMinZ() < b.getMinZ()) {
+            r.add(new BoundingBox(x1, y1, a.getMinZ(), x2, y2, b.getMinZ()));
+        }
+        if (a.getMaxZ() > b.getMaxZ()) {
+            r.add(new BoundingBox(x1, y1, b.getMaxZ(), x2, y2, a.getMaxZ()));
+        }
+        return r;
     }
 
     /**
@@ -978,4 +1076,110 @@ public class DexterityAPI {
         s.setBlocks(dblocks, true);
         return s;
     }
-}
\ No newline at end of file
+
+    /**
+     * Updates a selection made by {@link #selectFromLocations(Location, Location, Mask, Vector, Vector)} after its cuboid
+     * changed, such as when one of the corners is moved. Only the block displays in the cuboids' difference are visited.
+     *
+     * @param s       The unsaved selection to update
+     * @param w       The world of the selection
+     * @param oldBox  The cuboid that the selection was made with
+     * @param newBox  The new cuboid
+     * @param mask    The mask that the selection was made with, or null for no mask
+     * @param added   If not null, the block displays added to the selection are put in this list
+     * @param removed If not null, the block displays removed from the selection are put in this list
+     * @return False if the selection could not be updated in place and must be made again, in which case it was not changed
+     */
+    public boolean reselectFromLocations(DexterityDisplay s, World w, BoundingBox oldBox, BoundingBox newBox, Mask mask,
+                                         List<BlockDisplay> added, List<BlockDisplay> removed) {
+        if (s.isSaved() || s.getEditingLock() != null) {
+            return false;
+        }
+
+        List<DexBlock> toRemove = new ArrayList<>();
+        HashSet<UUID> visited = new HashSet<>();
+        for (BoundingBox slab : subtractBox(oldBox, newBox)) {
+            for (BlockDisplay bd : getBlockDisplaysInBox(w, slab)) {
+                if (!visited.add(bd.getUniqueId()) || inBox(newBox, bd)) {
+                    continue;
+                }
+                DexBlock db = plugin.getMappedDisplay(bd.getUniqueId());
+                if (db == null) {
+                    continue;
+                }
+                if (db.getDexterityDisplay() == s) {
+                    toRemove.add(db);
+                } else if (!db.getDexterityDisplay().isSaved() && db.getDexterityDisplay().getEditingLock() != null) {
+                    return false; //in the selection but not owned by it
+                }
+            }
+        }
+
+        List<BlockDisplay> toAdd = new ArrayList<>();
+        visited.clear();
+        for (BoundingBox slab : subtractBox(newBox, oldBox)) {
+            for (BlockDisplay bd : getBlockDisplaysInBox(w, slab)) {
+                if (!visited.add(bd.getUniqueId()) || inBox(oldBox, bd)
+                    || (mask != null && !mask.isAllowed(bd.getBlock().getMaterial()))) {
+                    continue;
+                }
+                DexBlock db = plugin.getMappedDisplay(bd.getUniqueId());
+                if (db != null) {
+                    if (db.getDexterityDisplay().isSaved() || db.getDexterityDisplay() == s) {
+                        continue;
+                    }
+                    if (db.getDexterityDisplay().getEditingLock() != null) {
+                        return false;
+                    }
+                }
+                toAdd.add(bd);
+            }
+        }
+
+        for (DexBlock db : toRemove) {
+            s.removeBlock(db);
+            if (removed != null) {
+                removed.add(db.getEntity());
+            }
+        }
+
+        int maxVol = plugin.getMaxVolume();
+        HashMap<OrientationKey, RollOffset> rollCache = new HashMap<>();
+        for (BlockDisplay bd : toAdd) {
+            if (s.getBlocksCount() >= maxVol) {
+                break;
+            }
+            DexBlock db = plugin.getMappedDisplay(bd.getUniqueId());
+            if (db == null) {
+                db = new DexBlock(bd, s);
+                db.loadRoll(rollCache);
+            }
+            s.addBlock(db);
+            if (added != null) {
+                added.add(bd);
+            }
+        }
+
+        if (!toRemove.isEmpty() || !toAdd.isEmpty()) {
+            s.recalculateCenter();
+        }
+        return true;
+    }
+
+    private static class PickCache {
+        final int tick;
+        final Location eye;
+        final long modCount;
+        ClickedBlockDisplay display;
+        ClickedBlock block;
+        double blockMaxDist;
+        boolean hasDisplay = false, hasBlock = false;
+
+        PickCache(int tick, Location eye, long modCount) {
+            this.tick = tick;
+            this.eye = eye;
+            this.modCount = modCount;
+        }
+    }
+
+}
@@ -49,9 +49,12 @@ import org.joml.Vector3f;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Implementation of all in-game /dex commands
@@ -230,7 +233,7 @@ public class CommandHandler {
             return;
         }
         boolean entity_centers = ct.getFlags().contains("entities");
-        for (DexBlock db : d.getBlocks()) {
+        for (DexBlock db : d.getBlocksView()) {
             api.markerPoint(db.getLocation(), Math.abs(db.getRoll()) < 0.000001 ? Color.LIME : Color.AQUA, 6);
             if (entity_centers) {
                 api.markerPoint(db.getEntity().getLocation(), Color.ORANGE, 6);
@@ -246,7 +249,7 @@ public class CommandHandler {
         if (d == null) {
             return;
         }
-        for (DexBlock db : d.getBlocks()) {
+        for (DexBlock db : d.getBlocksView()) {
             db.getEntity().setTransformation(new DexTransformation(db.getEntity().getTransformation()).setDisplacement(new Vector(0, 0, 0)).setRollOffset(new Vector(0, 0, 0)).build());
             api.markerPoint(db.getEntity().getLocation(), Color.AQUA, 2);
         }
@@ -260,7 +263,7 @@ public class CommandHandler {
         if (d == null) {
             return;
         }
-        for (DexBlock db : d.getBlocks()) {
+        for (DexBlock db : d.getBlocksView()) {
             db.loadTransformationAndRoll();
             api.markerPoint(db.getLocation(), Color.AQUA, 2);
         }
@@ -370,11 +373,56 @@ public class CommandHandler {
             }
         }
 
+        if (ct.getFlags().contains("dry")) {
+            int total = d.getBlocksCount();
+            d.consolidate(mask, null, ct, true, removed -> ct.getPlayer().sendMessage(getConfigString("consolidate-dry-run", session)
+                .replaceAll("\\Q%count%\\E", "" + removed)
+                .replaceAll("\\Q%total%\\E", "" + total)));
+            return;
+        }
+
         BlockTransaction t = new BlockTransaction(d, mask);
-        d.consolidate(mask, t, ct);
+        d.consolidate(mask, t, ct, false,
+            removed -> ct.getPlayer().sendMessage(getConfigString("consolidate-success", session)),
+            progress -> ct.getPlayer().sendMessage(getConfigString("consolidate-progress", session).replaceAll("\\Q%percent%\\E", "" + (int) (progress * 100))));
         session.pushTransaction(t); //commit is async
+    }
+
+    public void subdivide(CommandContext ct) {
+        DexSession session = ct.getSession();
+        Player p = ct.getPlayer();
+        DexterityDisplay d = getSelected(session, "subdivide");
+        if (d == null) {
+            return;
+        }
 
-        ct.getPlayer().sendMessage(getConfigString("consolidate-success", session));
+        Mask mask = session.getMask();
+
+        if (ct.getDefaultArg() != null) {
+            try {
+                Material mat = Material.valueOf(ct.getDefaultArg().toUpperCase().trim());
+                mask = new Mask(mat);
+            } catch (Exception ex) {
+                p.sendMessage(getConfigString("unknown-material", session).replaceAll("\\Q%input%\\E", ct.getDefaultArg().toLowerCase()));
+                return;
+            }
+        }
+
+        double size = ct.getDoubleAttrs().getOrDefault("size", 1.0);
+        if (size <= 0) {
+            p.sendMessage(getConfigString("must-enter-value", session).replaceAll("\\Q%value%\\E", "size"));
+            return;
+        }
+
+        int vol = (int) Math.min(plugin.getMaxVolume(), session.getPermittedVolume());
+        BuildTransaction t = new BuildTransaction(d);
+        try {
+            d.subdivide(mask, new Vector(size, size, size), vol, t, ct, () -> p.sendMessage(getConfigString("subdivide-success", session)));
+        } catch (DexterityException ex) {
+            p.sendMessage(getConfigString("exceeds-max-volume", session).replaceAll("\\Q%volume%\\E", "" + vol));
+            return;
+        }
+        session.pushTransaction(t); //commit is after the cells are spawned
     }
 
     public void recenter(CommandContext ct) { //TODO: add -auto to recalculate
@@ -439,7 +487,7 @@ public class CommandHandler {
 
         BlockTransaction t = new BlockTransaction(d);
         d.align(to_center, x, y, z);
-        t.commit(d.getBlocks());
+        t.commit(d.getBlocksView());
         session.pushTransaction(t);
 
         if (session.getFollowingOffset() != null) {
@@ -569,40 +617,42 @@ public class CommandHandler {
 
             Mask mask = new Mask(from);
             BlockTransaction t = new BlockTransaction(d, mask);
-            if (to == Material.AIR) {
-                for (DexBlock db : d.getBlocks()) {
-                    if (db.getEntity().getBlock().getMaterial() == from) {
-                        db.remove();
-                    }
+            Material fromMat = from, toMat = to;
+            DexBlock[] blocks = d.getBlocks(); //copy, since blocks may be removed while the edit is applied
+            BlockData todata = to == Material.AIR ? null : Bukkit.createBlockData(to);
+            plugin.getEditApplier().submit(d, blocks.length, i -> {
+                DexBlock db = blocks[i];
+                if (db.getEntity().getBlock().getMaterial() != fromMat) {
+                    return;
                 }
-                t.commit(d.getBlocks(), mask, true);
-            } else {
-                BlockData todata = Bukkit.createBlockData(to);
-                for (DexBlock db : d.getBlocks()) {
-                    Location loc = db.getLocation();
-                    if (!IntegrationManager.canModify(
-                        ct.getPlayer(), ct.getPlayer().getWorld().getName(),
-                        loc.x(), loc.y(), loc.z()
-                    )) {
-                        continue;
-                    }
-                    if (db.getEntity().getBlock().getMaterial() == from) {
-                        if (!plugin.isLegacy()) {
-                            db.getEntity().getBlock().copyTo(todata);
-                        }
-                        db.getEntity().setBlock(todata);
-                        t.commitBlock(db);
-                    }
+                if (todata == null) {
+                    db.remove();
+                    return;
+                }
+                Location loc = db.getLocation();
+                if (!IntegrationManager.canModify(
+                    ct.getPlayer(), ct.getPlayer().getWorld().getName(),
+                    loc.x(), loc.y(), loc.z()
+                )) {
+                    return;
+                }
+                if (!plugin.isLegacy()) {
+                    db.getEntity().getBlock().copyTo(todata);
+                }
+                db.getEntity().setBlock(todata);
+                t.commitBlock(db);
+            }, () -> {
+                if (todata == null) {
+                    t.commit(d.getBlocksView(), mask, true);
+                }
+                if (t.isCommitted()) {
+                    session.pushTransaction(t);
                 }
-            }
-
-            if (t.isCommitted()) {
-                session.pushTransaction(t);
-            }
 
-            p.sendMessage(getConfigString("replace-success", session)
-                .replaceAll("\\Q%from%\\E", from.toString().toLowerCase())
-                .replaceAll("\\Q%to%\\E", to.toString().toLowerCase()));
+                p.sendMessage(getConfigString("replace-success", session)
+                    .replaceAll("\\Q%from%\\E", fromMat.toString().toLowerCase())
+                    .replaceAll("\\Q%to%\\E", toMat.toString().toLowerCase()));
+            });
 
         } else {
             p.sendMessage(getUsage("replace"));
@@ -883,7 +933,7 @@ public class CommandHandler {
                 continue;
             }
             DexterityDisplay c = api.clone(d);
-            for (DexBlock db : c.getBlocks()) {
+            for (DexBlock db : c.getBlocksView()) {
                 Vector diff = new Vector(loc.getX() - centerv.getX(), loc.getY() - centerv.getY(), loc.getZ() - centerv.getZ());
                 db.move(diff);
                 t.addBlock(db);
@@ -1211,7 +1261,7 @@ public class CommandHandler {
 
         d.teleport(loc);
 
-        t.commit(d.getBlocks());
+        t.commit(d.getBlocksView());
         t.commitCenter(d.getCenter());
         session.pushTransaction(t);
 
@@ -1715,25 +1765,68 @@ public class CommandHandler {
         } else if (ct.getArgs().length >= 2) {
             page = Math.max(DexUtils.parseInt(ct.getArgs()[1]) - 1, 0);
         }
-        int maxpage = DexUtils.maxPage(plugin.getDisplays().size(), 10);
-        if (page >= maxpage) {
-            page = maxpage - 1;
-        }
 
-        String worldNameFilter = null;
+        //filters are resolved by the storage's indexed queries, then matched to the loaded displays
+        World world = null;
+        CompletableFuture<Set<String>> labels = null;
         if (strAttrs.containsKey("world")) {
-            World world = Bukkit.getWorld(strAttrs.get("world"));
+            world = Bukkit.getWorld(strAttrs.get("world"));
             if (world != null) {
-                worldNameFilter = world.getName();
+                labels = plugin.queryDisplayLabels(world);
             }
         }
+        if (strAttrs.containsKey("owner")) {
+            CompletableFuture<Set<String>> owned = plugin.queryDisplayLabels(Bukkit.getOfflinePlayer(strAttrs.get("owner")));
+            labels = labels == null ? owned : labels.thenCombine(owned, (a, b) -> {
+                a.retainAll(b);
+                return a;
+            });
+        }
+
+        if (labels == null) {
+            sendList(ct, plugin.getDisplays(), null, page);
+            return;
+        }
+        World worldFilter = world;
+        int listPage = page;
+        labels.whenComplete((result, ex) -> {
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (ex != null) {
+                    ex.printStackTrace();
+                    Bukkit.getLogger().severe("Could not query the display list!");
+                    return;
+                }
+                if (!p.isOnline()) {
+                    return;
+                }
+                List<DexterityDisplay> displays = new ArrayList<>();
+                for (String label : result) {
+                    DexterityDisplay d = plugin.getDisplay(label);
+                    if (d != null && d.getParent() == null) {
+                        displays.add(d);
+                    }
+                }
+                sendList(ct, displays, worldFilter, listPage);
+            });
+        });
+    }
+
+    private void sendList(CommandContext ct, Collection<DexterityDisplay> displays, World world, int page) {
+        Player p = ct.getPlayer();
+        int maxpage = DexUtils.maxPage(plugin.getDisplays().size(), 10);
+        if (page >= maxpage) {
+            page = maxpage - 1;
+        }
         boolean all = ct.getFlags().contains("all");
 
         int total = 0;
         List<DexterityDisplay> filteredDisplays = new ArrayList<>();
-        for (DexterityDisplay d : plugin.getDisplays()) {
-            if (d.getLabel() == null || (worldNameFilter != null && !d.getCenter().getWorld().getName().equals(worldNameFilter))) {
-                continue;
+        for (DexterityDisplay d : displays) {
+            if (d.getLabel() == null || (world != null && !d.getCenter().getWorld().getName().equals(world.getName()))) {
+                continue; //the stored world lags behind a display moved since its last save
             }
             if (!all && !d.isListed()) {
                 continue; //temporary display
@@ -1749,14 +1842,8 @@ public class CommandHandler {
         p.sendMessage(plugin.getConfigString("list-page-header").replaceAll("\\Q%page%\\E", "" + (page + 1)).replaceAll("\\Q%maxpage%\\E", "" + maxpage));
         String[] strs = new String[total];
         int i = 0;
+        DexSession session = ct.getSession();
         for (DexterityDisplay disp : filteredDisplays) {
-            if (disp.getLabel() == null || (worldNameFilter != null && !disp.getCenter().getWorld().getName().equals(worldNameFilter))) {
-                continue;
-            }
-            if (!all && !disp.isListed()) {
-                continue; //temporary display
-            }
-            DexSession session = ct.getSession();
             i += constructList(strs, disp, session.getSelected() == null ? null : session.getSelected().getLabel(), i, 0);
         }
         DexUtils.paginate(p, strs, page, 10);
@@ -1815,7 +1902,7 @@ public class CommandHandler {
 
             double max_scale = plugin.getConfig().getDouble("max-scale"), min_scale = plugin.getConfig().getDouble("min-scale");
             if (max_scale > 1 || min_scale > 0) {
-                for (DexBlock db : d.getBlocks()) {
+                for (DexBlock db : d.getBlocksView()) {
                     Vector db_scale = DexUtils.hadimard(new_scale, db.getTransformation().getScale());
                     if (max_scale > 1 && DexUtils.max(db_scale) > max_scale) {
                         p.sendMessage(getConfigString("cannot-exceed-scale-limit", session));
@@ -35,7 +35,7 @@ public class DexterityCommand implements CommandExecutor, TabCompleter {
     private final String[] commands = {
         "align", "axis", "clone", "command", "consolidate", "convert", "deconvert", "deselect", "glow", "highlight", "info", "item", "label", "list",
         "mask", "merge", "move", "owner", "pos1", "recenter", "redo", "reload", "remove", "replace", "rotate", "scale", "schem", "seat", "select",
-        "undo", "unsave", "tile", "wand"
+        "subdivide", "undo", "unsave", "tile", "wand"
     };
     private final String[] command_strs = new String[commands.length];
 
@@ -98,6 +98,10 @@ public class DexterityCommand implements CommandExecutor, TabCompleter {
         }
 
         args[0] = args[0].toLowerCase();
+        if (plugin.isLoadingDisplays() && !args[0].equals("help") && !args[0].equals("?")) {
+            p.sendMessage(plugin.getConfigString("displays-loading"));
+            return true;
+        }
         CommandContext ctx = new CommandContext(plugin, p, args);
 
         switch (args[0]) {
@@ -137,6 +141,9 @@ public class DexterityCommand implements CommandExecutor, TabCompleter {
             case "consolidate":
                 handler.consolidate(ctx);
                 return true;
+            case "subdivide":
+                handler.subdivide(ctx);
+                return true;
             case "recenter":
                 handler.recenter(ctx);
                 return true;
@@ -289,18 +296,25 @@ public class DexterityCommand implements CommandExecutor, TabCompleter {
         switch (argsr[0]) {
             case "list":
                 ret.add("world=");
+                ret.add("owner=");
                 ret.add("-all");
             case "?":
             case "help":
                 ret.add("page=");
                 return ret;
             case "consolidate":
+            case "subdivide":
             case "replace":
             case "rep":
-                int argthreshold = argsr[0].equals("consolidate") ? 2 : 3;
+                int argthreshold = argsr[0].equals("consolidate") || argsr[0].equals("subdivide") ? 2 : 3;
                 if (argsr.length <= argthreshold && argsr[argsr.length - 1].length() >= 2) {
                     ret = DexUtils.materials(argsr[argsr.length - 1]);
                 }
+                if (argsr[0].equals("consolidate")) {
+                    ret.add("-dry");
+                } else if (argsr[0].equals("subdivide")) {
+                    ret.add("size=");
+                }
                 return ret;
             case "mask":
                 String lastarg = argsr[argsr.length - 1];
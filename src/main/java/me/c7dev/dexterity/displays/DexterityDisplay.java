@@ -6,15 +6,22 @@ import me.c7dev.dexterity.api.events.DisplayTranslationEvent;
 import me.c7dev.dexterity.command.CommandContext;
 import me.c7dev.dexterity.displays.animation.Animation;
 import me.c7dev.dexterity.displays.animation.RideableAnimation;
+import me.c7dev.dexterity.displays.animation.SitAnimation;
 import me.c7dev.dexterity.displays.schematics.SchematicBuilder;
+import me.c7dev.dexterity.displays.storage.DisplayJournal;
 import me.c7dev.dexterity.integration.IntegrationManager;
 import me.c7dev.dexterity.transaction.BlockTransaction;
+import me.c7dev.dexterity.transaction.BuildTransaction;
 import me.c7dev.dexterity.util.DexBlock;
+import me.c7dev.dexterity.util.DexBlockState;
+import me.c7dev.dexterity.util.DexTransformation;
 import me.c7dev.dexterity.util.DexUtils;
 import me.c7dev.dexterity.util.DexterityException;
+import me.c7dev.dexterity.util.EditApplier;
 import me.c7dev.dexterity.util.InteractionCommand;
 import me.c7dev.dexterity.util.Mask;
 import me.c7dev.dexterity.util.OrientationKey;
+import me.c7dev.dexterity.util.ParallelConsolidation;
 import me.c7dev.dexterity.util.RollOffset;
 import me.c7dev.dexterity.util.RotationPlan;
 import org.bukkit.Bukkit;
@@ -24,24 +31,29 @@ import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.entity.Item;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.util.BoundingBox;
 import org.bukkit.util.Vector;
 import org.joml.Matrix3d;
 import org.joml.Quaterniond;
 import org.joml.Quaternionf;
-import org.joml.Vector3d;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Spliterator;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
 
 /**
  * Defines a selection of {@link DexBlock}, possibly with a saved display label or sub-displays
@@ -57,11 +69,12 @@ public class DexterityDisplay {
     private String label, itemSchemLabel;
     private Vector scale;
     private DexterityDisplay parent;
-    private boolean startedAnimations = false, zeroPitch = false, listed = true;
+    private boolean startedAnimations = false, zeroPitch = false, listed = true, dirty = false;
     private UUID editingLock;
     private DexRotation rot = null;
     private ItemStack item;
     private List<DexBlock> blocks = new ArrayList<>();
+    private int blocksModCount = 0;
     private List<UUID> owners = new ArrayList<>();
 
     /**
@@ -168,6 +181,8 @@ public class DexterityDisplay {
      */
     public void setListed(boolean b) {
         listed = b;
+        dirty = true;
+        journal().logListed(this);
         for (DexterityDisplay d : subdisplays) {
             d.setListed(b);
         }
@@ -207,6 +222,8 @@ public class DexterityDisplay {
      */
     public void setOwners(List<OfflinePlayer> newOwners) {
         owners = new ArrayList<>();
+        dirty = true;
+        journal().logOwners(this);
         if (newOwners == null) {
             return;
         }
@@ -243,6 +260,8 @@ public class DexterityDisplay {
             return;
         }
         owners.add(p.getUniqueId());
+        dirty = true;
+        journal().logOwners(this);
     }
 
     /**
@@ -254,7 +273,10 @@ public class DexterityDisplay {
         if (p == null) {
             return;
         }
-        owners.remove(p.getUniqueId());
+        if (owners.remove(p.getUniqueId())) {
+            dirty = true;
+            journal().logOwners(this);
+        }
     }
 
     /**
@@ -275,7 +297,7 @@ public class DexterityDisplay {
         int n = 0;
         zeroPitch = true;
 
-        if (blocks.size() == 0) {
+        if (blocks.isEmpty()) {
             w = plugin.getDefaultWorld();
             n = 1;
         } else {
@@ -307,6 +329,8 @@ public class DexterityDisplay {
             }
         }
         center = DexUtils.location(w, cvec.multiply(1.0 / n));
+        dirty = true;
+        journal().logTransform(this);
     }
 
     /**
@@ -363,6 +387,32 @@ public class DexterityDisplay {
         return label != null;
     }
 
+    /**
+     * Checks if the display has been modified since it was last written to the display storage
+     *
+     * @return true if the saved data is out of date
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Flags the display to be written to the display storage on the next save interval.
+     * Only needed when modifying the display's entities directly through the API.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    @Deprecated
+    public void clearDirty() { //handled by Dexterity after the display is snapshotted for saving
+        dirty = false;
+    }
+
+    private DisplayJournal journal() {
+        return plugin.getJournal();
+    }
+
     /**
      * Unsaves the display and turns it into a regular selection
      */
@@ -378,9 +428,10 @@ public class DexterityDisplay {
     }
 
     /**
-     * Retrieves a list of {@link DexBlock} that can be iterated over
+     * Retrieves a copy of the {@link DexBlock}s that is safe to iterate over while blocks are added or removed
      *
-     * @return Unmodifiable array of DexBlocks
+     * @return New array of DexBlocks
+     * @see #getBlocksView()
      * @see #addBlock(DexBlock)
      * @see #removeBlock(DexBlock)
      */
@@ -388,6 +439,42 @@ public class DexterityDisplay {
         return blocks.toArray(new DexBlock[blocks.size()]);
     }
 
+    /**
+     * Retrieves the {@link DexBlock}s without copying them. The view throws a {@link java.util.ConcurrentModificationException}
+     * if a block is added or removed while it is being iterated, so use {@link #getBlocks()} for loops that remove blocks.
+     *
+     * @return Unmodifiable live view of the DexBlocks
+     */
+    public List<DexBlock> getBlocksView() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    /**
+     * Performs an action for each {@link DexBlock} without copying the block list
+     *
+     * @param action
+     * @see #getBlocksView()
+     */
+    public void forEachBlock(Consumer<? super DexBlock> action) {
+        blocks.forEach(action);
+    }
+
+    /**
+     * @return Fail-fast spliterator over the DexBlocks, which can be split for parallel streams
+     */
+    public Spliterator<DexBlock> blockSpliterator() {
+        return blocks.spliterator();
+    }
+
+    /**
+     * Gets a counter that changes whenever a block is added, removed, or re-sorted
+     *
+     * @return The modification count
+     */
+    public int getBlocksModCount() {
+        return blocksModCount;
+    }
+
     /**
      * @return The integer number of DexBlocks within the selection
      */
@@ -407,10 +494,17 @@ public class DexterityDisplay {
         }
         db.setDexterityDisplay(this);
         blocks.add(db);
+        blocksModCount++;
+        dirty = true;
+        journal().logBlock(this, db.getEntity().getUniqueId(), true);
     }
 
     private void removeBlockNoUnmap(DexBlock db) {
-        blocks.remove(db);
+        if (blocks.remove(db)) {
+            blocksModCount++;
+            dirty = true;
+            journal().logBlock(this, db.getEntity().getUniqueId(), false);
+        }
     }
 
     /**
@@ -422,7 +516,10 @@ public class DexterityDisplay {
      */
     public void removeBlock(DexBlock db) {
         if (blocks.remove(db)) {
+            blocksModCount++;
             plugin.clearMappedDisplay(db);
+            dirty = true;
+            journal().logBlock(this, db.getEntity().getUniqueId(), false);
         }
     }
 
@@ -454,6 +551,10 @@ public class DexterityDisplay {
             removeAnimation(existing);
         }
         animations.add(a);
+        dirty = true;
+        if (a instanceof SitAnimation) {
+            journal().logSeat(this);
+        }
     }
 
     /**
@@ -466,7 +567,12 @@ public class DexterityDisplay {
     public void removeAnimation(Animation a) {
         a.kill();
         a.stop();
-        animations.remove(a);
+        if (animations.remove(a)) {
+            dirty = true;
+            if (a instanceof SitAnimation) {
+                journal().logSeat(this);
+            }
+        }
     }
 
     /**
@@ -515,6 +621,8 @@ public class DexterityDisplay {
     public void addCommand(InteractionCommand cmd) {
         if (!cmds.contains(cmd)) {
             cmds.add(cmd);
+            dirty = true;
+            journal().logCommands(this);
         }
     }
 
@@ -524,7 +632,10 @@ public class DexterityDisplay {
      * @param cmd
      */
     public void removeCommand(InteractionCommand cmd) {
-        cmds.remove(cmd);
+        if (cmds.remove(cmd)) {
+            dirty = true;
+            journal().logCommands(this);
+        }
     }
 
     /**
@@ -592,7 +703,9 @@ public class DexterityDisplay {
             }
         }
         this.item = item.clone();
+        dirty = true;
         updateDropItemMeta();
+        journal().logDropItem(this);
     }
 
     public String getDropItemSchematicName() {
@@ -645,6 +758,8 @@ public class DexterityDisplay {
      */
     public void setBlocks(List<DexBlock> entities, boolean recalcCenter) {
         this.blocks = entities;
+        blocksModCount++;
+        dirty = true;
         plugin.unregisterDisplay(this);
         if (recalcCenter) {
             recalculateCenter();
@@ -670,6 +785,7 @@ public class DexterityDisplay {
             d.getParent().removeSubdisplay(d);
         }
         subdisplays.add(d);
+        d.markDirty();
     }
 
     public void removeSubdisplay(DexterityDisplay d) {
@@ -699,6 +815,8 @@ public class DexterityDisplay {
             return;
         }
         parent = p;
+        dirty = true;
+        journal().logParent(this);
     }
 
     /**
@@ -771,8 +889,10 @@ public class DexterityDisplay {
             !subdisplay.canHardMerge() || !canHardMerge()) {
             return false;
         }
+        flushPendingEdits();
+        subdisplay.flushPendingEdits();
         plugin.unregisterDisplay(subdisplay);
-        for (DexBlock b : subdisplay.getBlocks()) {
+        for (DexBlock b : subdisplay.getBlocksView()) {
             Location loc = b.getLocation();
             if (!IntegrationManager.canModify(
                 ct.getPlayer(), ct.getPlayer().getWorld().getName(),
@@ -782,6 +902,9 @@ public class DexterityDisplay {
             }
             b.setDexterityDisplay(this);
             blocks.add(b);
+            blocksModCount++;
+            dirty = true;
+            journal().logBlock(this, b.getEntity().getUniqueId(), true);
             if (zeroPitch && b.getEntity().getLocation().getPitch() != 0) {
                 zeroPitch = false;
             }
@@ -894,6 +1017,7 @@ public class DexterityDisplay {
     }
 
     private void removeHelper(boolean restore) {
+        flushPendingEdits();
         if (restore) {
             for (DexBlock b : blocks) {
                 Location loc = DexUtils.blockLoc(b.getEntity().getLocation());
@@ -961,6 +1085,8 @@ public class DexterityDisplay {
             throw new IllegalArgumentException("Cannot recenter into a different world!");
         }
         center = loc.clone();
+        dirty = true;
+        journal().logTransform(this);
     }
 
     public World getWorld() {
@@ -997,11 +1123,12 @@ public class DexterityDisplay {
     }
 
     /**
-     * Moves the display or transfers it to another world
+     * Moves the display or transfers it to another world. Subdisplays keep their offset from this display's center.
      *
      * @param loc
      */
     public void teleport(Location loc) {
+        flushPendingEdits();
 
         Location from = center.clone();
 
@@ -1009,16 +1136,23 @@ public class DexterityDisplay {
             Vector diff = new Vector(loc.getX() - center.getX(), loc.getY() - center.getY(), loc.getZ() - center.getZ());
             teleport(diff);
         } else {
+            Vector[] offsets = new Vector[subdisplays.size()];
+            for (int i = 0; i < offsets.length; i++) { //keep each subdisplay at its offset from this display
+                offsets[i] = subdisplays.get(i).getCenter().toVector().subtract(center.toVector());
+            }
+
             for (DexBlock db : blocks) {
                 Vector diff = new Vector(db.getEntity().getLocation().getX() - center.getX(), db.getEntity().getLocation().getY() - center.getY(), db.getEntity().getLocation().getZ() - center.getZ());
 
                 float yaw = db.getEntity().getLocation().getYaw(), pitch = db.getEntity().getLocation().getPitch();
-                db.getEntity().teleport(loc.clone().add(diff));
+                db.teleport(loc.clone().add(diff));
                 db.getEntity().setRotation(yaw, pitch);
             }
             center = loc.clone();
-            for (DexterityDisplay subd : subdisplays) {
-                subd.teleport(loc);
+            dirty = true;
+            journal().logTransform(this);
+            for (int i = 0; i < offsets.length; i++) {
+                subdisplays.get(i).teleport(loc.clone().add(offsets[i]));
             }
         }
 
@@ -1027,12 +1161,15 @@ public class DexterityDisplay {
     }
 
     /**
-     * Moves the display by an offset
+     * Moves the display and its subdisplays by an offset
      *
      * @param diff
      */
     public void teleport(Vector diff) {
+        flushPendingEdits();
         center.add(diff);
+        dirty = true;
+        journal().logTransform(this);
         for (DexBlock b : blocks) {
             b.move(diff);
         }
@@ -1041,6 +1178,18 @@ public class DexterityDisplay {
         }
     }
 
+    /**
+     * Applies the block updates still queued for this display, such as the rest of a large rotation, and bakes an
+     * interpolated rotation. Called before a synchronous change so that it starts from the blocks' final state, and so
+     * that the queued updates cannot overwrite it.
+     */
+    public void flushPendingEdits() {
+        if (rot != null) {
+            rot.bakeInterpolated(); //the cached transformations are stale until baked
+        }
+        plugin.getEditApplier().flush(this);
+    }
+
     /**
      * Sets the glow color of the blocks in this display
      *
@@ -1066,7 +1215,7 @@ public class DexterityDisplay {
     }
 
     /**
-     * Scale by a multiplier
+     * Scale by a multiplier. Each subdisplay is scaled by the same multiplier about its own center.
      *
      * @param s
      */
@@ -1074,6 +1223,7 @@ public class DexterityDisplay {
         if (s == 0) {
             throw new IllegalArgumentException("Scale cannot be zero!");
         }
+        flushPendingEdits();
         Vector centerv = center.toVector();
         for (DexBlock db : blocks) {
 
@@ -1091,8 +1241,10 @@ public class DexterityDisplay {
             db.updateTransformation();
         }
         scale = scale.multiply(s);
+        dirty = true;
+        journal().logTransform(this);
         for (DexterityDisplay sub : subdisplays) {
-            sub.setScale(s);
+            sub.scale(s);
         }
     }
 
@@ -1105,10 +1257,12 @@ public class DexterityDisplay {
      */
     public void setBaseRotation(Vector x, Vector y, Vector z) {
         rot = new DexRotation(this, x, y, z);
+        dirty = true;
+        journal().logTransform(this);
     }
 
     /**
-     * Skew by a multiplier along x, y, and z, respectively
+     * Skew by a multiplier along x, y, and z, respectively. Each subdisplay is skewed by the same multiplier about its own center.
      *
      * @param v
      * @throws {@link DexterityException} if skewing a selection with more than 1 rotation orientation, as it is impossible to create parallelograms
@@ -1124,6 +1278,7 @@ public class DexterityDisplay {
             scale(v.getX()); //much faster calculation with scalar
             return;
         }
+        flushPendingEdits();
 
         OrientationKey all_key = null;
         for (DexBlock db : blocks) {
@@ -1176,6 +1331,8 @@ public class DexterityDisplay {
         }
 
         scale = DexUtils.hadimard(scale, v);
+        dirty = true;
+        journal().logTransform(this);
         for (DexterityDisplay sub : subdisplays) {
             sub.scale(v);
         }
@@ -1184,6 +1341,8 @@ public class DexterityDisplay {
     @Deprecated
     public void resetScale(Vector v) {
         scale = v.clone();
+        dirty = true;
+        journal().logTransform(this);
     }
 
     /**
@@ -1214,6 +1373,7 @@ public class DexterityDisplay {
         if (!(x || y || z)) {
             throw new IllegalArgumentException("Must align in at least one axis");
         }
+        flushPendingEdits();
         Vector diff;
         if (toCenter) {
             Vector locv = center.toVector();
@@ -1299,6 +1459,8 @@ public class DexterityDisplay {
         } else {
             rot.setAxes(yaw, pitch, roll);
         }
+        dirty = true;
+        journal().logTransform(this);
     }
 
     /**
@@ -1360,7 +1522,7 @@ public class DexterityDisplay {
     }
 
     /**
-     * Re-sorts the blocks list in the standard y, x, z order
+     * Re-sorts the blocks in the standard y, x, z order
      */
     public void sortBlocks() {
         double epsilon = 0.00001;
@@ -1378,6 +1540,7 @@ public class DexterityDisplay {
             }
             return l1.getY() > l2.getY() ? 1 : -1;
         });
+        blocksModCount++;
     }
 
     /**
@@ -1387,156 +1550,212 @@ public class DexterityDisplay {
      * @param t The transaction to set blocks to or null
      */
     public void consolidate(Mask m, BlockTransaction t, CommandContext ct) {
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            HashMap<OrientationKey, List<DexBlock>> grouped = new HashMap<>();
-            HashMap<OrientationKey, Quaternionf> qmap = new HashMap<>();
-            HashMap<DexBlock, Vector> deltas = new HashMap<>();
-            List<DexBlock> toRemove = new ArrayList<>();
-            Vector centerv = center.toVector();
-
-            //group blocks by rotation orientation
-            for (DexBlock db : blocks) {
-                if (m != null && !m.isAllowed(db.getEntity().getBlock().getMaterial())) {
-                    continue;
-                }
-                Location loc = db.getLocation();
-                if (!IntegrationManager.canModify(
-                    ct.getPlayer(), ct.getPlayer().getWorld().getName(),
-                    loc.x(), loc.y(), loc.z()
-                )) {
-                    continue;
-                }
-                OrientationKey key = new OrientationKey(db.getEntity().getLocation().getYaw(), db.getEntity().getLocation().getPitch(), db.getTransformation().getLeftRotation());
-                List<DexBlock> group = grouped.get(key);
-                Quaternionf q = qmap.get(key);
-                if (group == null) {
-                    group = new ArrayList<DexBlock>();
-                    grouped.put(key, group);
-
-                    q = DexUtils.cloneQ(key.getQuaternion());
-                    q.w = -q.w;
-                    q.rotateX((float) Math.toRadians(-key.getPitch()));
-                    q.rotateY((float) Math.toRadians(key.getYaw()));
-
-                    qmap.put(key, q);
-                }
+        consolidate(m, t, ct, false, null);
+    }
 
-                group.add(db);
+    /**
+     * Consolidate along all axes to reduce the number of entities where possible without altering the selection's shape.
+     * Identical blocks with the same orientation are merged into the largest boxes that they fill.
+     *
+     * @param m          Mask to use, or null for no mask
+     * @param t          The transaction to set blocks to or null
+     * @param dryRun     If true, only counts the blocks that would be removed
+     * @param onComplete Receives the number of block displays removed, or that would be removed if a dry run, on the main thread. Can be null.
+     */
+    public void consolidate(Mask m, BlockTransaction t, CommandContext ct, boolean dryRun, IntConsumer onComplete) {
+        consolidate(m, t, ct, dryRun, onComplete, null);
+    }
 
-                Vector3d diff = DexUtils.vectord(db.getLocation().toVector().subtract(centerv));
-                q.transform(diff);
-                db.setTempVector(DexUtils.vector(diff));
+    /**
+     * Consolidate along all axes to reduce the number of entities where possible without altering the selection's shape.
+     * Each orientation group is computed in parallel from a copy of the blocks, and the result is applied on the main thread.
+     *
+     * @param m          Mask to use, or null for no mask
+     * @param t          The transaction to set blocks to or null
+     * @param dryRun     If true, only counts the blocks that would be removed
+     * @param onComplete Receives the number of block displays removed, or that would be removed if a dry run, on the main thread. Can be null.
+     * @param onProgress Receives the fraction of blocks computed once per second while computing, on the main thread. Can be null.
+     */
+    public void consolidate(Mask m, BlockTransaction t, CommandContext ct, boolean dryRun, IntConsumer onComplete, DoubleConsumer onProgress) {
+        flushPendingEdits();
+        List<DexBlock> selected = new ArrayList<>();
+        for (DexBlock db : blocks) {
+            if (m != null && !m.isAllowed(db.getEntity().getBlock().getMaterial())) {
+                continue;
             }
-
-            //perform consolidation for each group
-            HashMap<Material, Vector> sizeMap = new HashMap<>();
-            for (Entry<OrientationKey, List<DexBlock>> entry : grouped.entrySet()) {
-                Quaternionf q = qmap.get(entry.getKey());
-                consolidate(entry.getValue(), 0, q, toRemove, deltas, sizeMap);
-                consolidate(entry.getValue(), 1, q, toRemove, deltas, sizeMap);
-                consolidate(entry.getValue(), 2, q, toRemove, deltas, sizeMap);
+            Location loc = db.getLocation();
+            if (!IntegrationManager.canModify(
+                ct.getPlayer(), ct.getPlayer().getWorld().getName(),
+                loc.x(), loc.y(), loc.z()
+            )) {
+                continue;
             }
+            selected.add(db);
+        }
 
-            HashMap<OrientationKey, RollOffset> roMap = new HashMap<>();
-            for (DexBlock db : blocks) {
-                db.setTempVector(null);
-                if (db.getRoll() != 0) { //update roll
-                    OrientationKey key = new OrientationKey(db.getEntity().getLocation().getYaw(), db.getEntity().getLocation().getPitch(), db.getTransformation().getLeftRotation());
-                    RollOffset ro = roMap.get(key);
-                    if (ro == null) {
-                        ro = new RollOffset(db.getTransformation().getLeftRotation(), db.getTransformation().getScale());
-                        roMap.put(key, ro);
-                    }
-                    db.getTransformation().setRollOffset(ro.getOffset());
-                }
+        ParallelConsolidation c = new ParallelConsolidation(selected, center, dryRun);
+        BukkitTask progressTask = onProgress == null ? null : Bukkit.getScheduler().runTaskTimer(plugin, () -> onProgress.accept(c.getProgress()), 20, 20);
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            boolean success = true;
+            try {
+                c.compute();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                Bukkit.getLogger().severe("Could not consolidate " + (label == null ? "a selection" : label) + "!");
+                success = false;
             }
 
+            boolean computed = success;
             Bukkit.getScheduler().runTask(plugin, () -> { //sync thread to send packets
-                for (DexBlock db : toRemove) {
-                    db.remove();
+                if (progressTask != null) {
+                    progressTask.cancel();
                 }
-                for (Entry<DexBlock, Vector> entry : deltas.entrySet()) {
-                    entry.getKey().move(entry.getValue());
-                    entry.getKey().updateTransformation();
+                if (!computed) {
+                    return;
                 }
-                if (t != null) {
-                    t.commit(getBlocks(), m, true);
+                if (dryRun) {
+                    if (onComplete != null) {
+                        onComplete.accept(c.getRemovedCount());
+                    }
+                    return;
                 }
+                plugin.getEditApplier().submit(this, c.getRemoved(), DexBlock::remove, null);
+                plugin.getEditApplier().submit(this, c.getChanges(), change -> {
+                    DexBlock db = change.block;
+                    if (db.getEntity().isDead()) {
+                        return;
+                    }
+                    db.getTransformation()
+                        .setDisplacement(change.displacement)
+                        .setScale(change.scale);
+                    if (change.rollOffset != null) {
+                        db.getTransformation().setRollOffset(change.rollOffset);
+                    }
+                    db.move(change.move);
+                    db.updateTransformation();
+                }, () -> {
+                    if (t != null) {
+                        t.commit(getBlocksView(), m, true);
+                    }
+                    if (onComplete != null) {
+                        onComplete.accept(c.getRemovedCount());
+                    }
+                });
             });
         });
     }
 
     /**
-     * Consolidate along a specific axis
+     * Splits scaled blocks back into cells of a target scale so that they can be edited individually.
+     * The cells are spawned over as many ticks as needed, then the original blocks are removed.
      *
-     * @param axis 0 for X, 1 for Y, 2 for Z
+     * @param m          Mask to use, or null for no mask
+     * @param cellScale  The target scale of each cell, rounded per block so that the cells fill it exactly
+     * @param maxBlocks  The maximum number of blocks that the display may have afterwards
+     * @param t          The transaction to record the spawned and removed blocks in, or null
+     * @param ct         The context of the player subdividing, whose integration permissions are checked for each block
+     * @param onComplete Ran on the main thread once every cell is spawned, or null
+     * @return The number of cells that will be spawned
+     * @throws DexterityException if the display would have more than maxBlocks blocks
      */
-    private void consolidate(List<DexBlock> rotBlocks, int axis, Quaternionf q, List<DexBlock> toRemove, HashMap<DexBlock, Vector> deltas, HashMap<Material, Vector> sizeMap) { //assumed all same rotation
-        if (rotBlocks.size() <= 1) {
-            return;
+    public int subdivide(Mask m, Vector cellScale, int maxBlocks, BuildTransaction t, CommandContext ct, Runnable onComplete) {
+        if (cellScale.getX() <= 0 || cellScale.getY() <= 0 || cellScale.getZ() <= 0) {
+            throw new IllegalArgumentException("Cell scale must be positive!");
         }
-        double epsilon = 0.001;
-        rotBlocks.sort((l, r) -> {
-            double a = DexUtils.getParameter(l.getTempVector(), axis), b = DexUtils.getParameter(r.getTempVector(), axis);
-            if (Math.abs(a - b) < epsilon) {
-                return 0;
-            }
-            return a > b ? 1 : -1;
-        });
+        flushPendingEdits();
 
-        for (int i = 0; i < rotBlocks.size(); i++) {
-            DexBlock prev = rotBlocks.get(i);
-            Vector prev_loc = prev.getTempVector();
-            Vector s1 = prev.getTransformation().getScale();
-            double s1min = DexUtils.minValue(s1);
-
-            for (int j = i + 1; j < rotBlocks.size(); j++) { //find the first block that is in the same axis, optimized by sort
-                DexBlock db = rotBlocks.get(j);
-                Vector loc = db.getTempVector();
-                Vector s2 = db.getTransformation().getScale();
-                double epsilon2 = 0.001 * Math.min(s1min, DexUtils.minValue(s2));
-
-                //if differs only by current axis
-                if (Math.abs(DexUtils.getParameter(loc, axis + 1) - DexUtils.getParameter(prev_loc, axis + 1)) < epsilon2
-                    && Math.abs(DexUtils.getParameter(loc, axis + 2) - DexUtils.getParameter(prev_loc, axis + 2)) < epsilon2) {
-
-                    //if same type
-                    if (db.getEntity().getBlock().equals(prev.getEntity().getBlock())
-                        && Math.abs(DexUtils.getParameter(s2, axis + 1) - DexUtils.getParameter(s1, axis + 1)) < epsilon2
-                        && Math.abs(DexUtils.getParameter(s2, axis + 2) - DexUtils.getParameter(s1, axis + 2)) < epsilon2) {
-
-                        Vector blocksize = sizeMap.get(prev.getEntity().getBlock().getMaterial());
-                        if (blocksize == null) {
-                            blocksize = DexUtils.getBlockDimensions(prev.getEntity().getBlock());
-                            sizeMap.put(prev.getEntity().getBlock().getMaterial(), blocksize);
-                        }
+        //count first so that nothing is spawned if the result is too large
+        List<DexBlock> split = new ArrayList<>();
+        List<int[]> counts = new ArrayList<>();
+        long total = blocks.size();
+        for (DexBlock db : blocks) {
+            if (m != null && !m.isAllowed(db.getEntity().getBlock().getMaterial())) {
+                continue;
+            }
+            Location loc = db.getLocation();
+            if (!IntegrationManager.canModify(
+                ct.getPlayer(), ct.getPlayer().getWorld().getName(),
+                loc.x(), loc.y(), loc.z()
+            )) {
+                continue;
+            }
+            Vector s = db.getTransformation().getScale();
+            int nx = (int) Math.max(1, Math.round(Math.abs(s.getX() / cellScale.getX()))),
+                ny = (int) Math.max(1, Math.round(Math.abs(s.getY() / cellScale.getY()))),
+                nz = (int) Math.max(1, Math.round(Math.abs(s.getZ() / cellScale.getZ())));
+            if (nx == 1 && ny == 1 && nz == 1) {
+                continue;
+            }
+            split.add(db);
+            counts.add(new int[]{nx, ny, nz});
+            total += (long) nx * ny * nz - 1;
+        }
+        if (total > maxBlocks) {
+            throw new DexterityException("Subdividing would exceed " + maxBlocks + " blocks!");
+        }
+
+        HashMap<Material, Vector> sizeMap = new HashMap<>();
+        List<DexBlockState> cells = new ArrayList<>();
+        for (int b = 0; b < split.size(); b++) {
+            DexBlock db = split.get(b);
+            int[] n = counts.get(b);
+            Location loc = db.getEntity().getLocation();
+            DexTransformation trans = db.getTransformation();
+            BlockData data = db.getEntity().getBlock();
+            Color glow = db.getEntity().isGlowing() ? db.getEntity().getGlowColorOverride() : null;
+            if (db.getEntity().isGlowing() && glow == null) {
+                glow = Color.WHITE;
+            }
 
-                        double diff = DexUtils.getParameter(loc, axis) - DexUtils.getParameter(prev_loc, axis),
-                            threshold = DexUtils.getParameter(blocksize, axis) * (DexUtils.getParameter(s2, axis) + DexUtils.getParameter(s1, axis)) / 2;
-
-                        //if close enough to be touching/overlapping, perform the consolidation between pair
-                        if (diff - threshold <= epsilon2) {
-                            double newLen = (threshold + diff) / DexUtils.getParameter(blocksize, axis);
-                            double disp = DexUtils.getParameter(prev.getTransformation().getDisplacement(), axis);
-
-                            DexUtils.setParameter(s1, axis, newLen);
-                            DexUtils.setParameter(prev.getTransformation().getDisplacement(), axis, -newLen / 2);
-
-                            Vector del = DexUtils.oneHot(axis, disp + (newLen * 0.5));
-                            del = DexUtils.vector(q.transformInverse(DexUtils.vectord(del)));
-                            Vector existingDel = deltas.get(prev);
-                            if (existingDel != null) {
-                                del.add(existingDel);
-                            }
-                            deltas.put(prev, del);
-                            toRemove.add(db);
-                            rotBlocks.remove(db);
+            Vector blocksize = sizeMap.computeIfAbsent(data.getMaterial(), k -> DexUtils.getBlockDimensions(data));
+            Vector cs = new Vector(trans.getScale().getX() / n[0], trans.getScale().getY() / n[1], trans.getScale().getZ() / n[2]);
+            Vector step = DexUtils.hadimard(cs, blocksize);
+            Vector rollOffset = db.getRoll() == 0 ? null : new RollOffset(trans.getLeftRotation(), cs).getOffset();
+
+            Quaternionf q = DexUtils.cloneQ(trans.getLeftRotation());
+            q.w = -q.w;
+            q.rotateX((float) Math.toRadians(-loc.getPitch()));
+            q.rotateY((float) Math.toRadians(loc.getYaw()));
+
+            //each cell keeps the original block's minimum corner as its anchor, in the block's local axes
+            Vector base = trans.getDisplacement().clone().add(cs.clone().multiply(0.5));
+            for (int j = 0; j < n[1]; j++) {
+                for (int k = 0; k < n[2]; k++) {
+                    for (int i = 0; i < n[0]; i++) {
+                        Vector local = base.clone().add(new Vector(i * step.getX(), j * step.getY(), k * step.getZ()));
+                        Location cellLoc = loc.clone().add(DexUtils.vector(q.transformInverse(DexUtils.vectord(local))));
+                        DexTransformation cellTrans = trans.clone()
+                            .setScale(cs.clone())
+                            .setDisplacement(cs.clone().multiply(-0.5));
+                        if (rollOffset != null) {
+                            cellTrans.setRollOffset(rollOffset.clone());
                         }
+                        cells.add(new DexBlockState(cellLoc, null, cellTrans, data, this, db.getRoll(), glow));
                     }
-                    break;
                 }
             }
+            if (t != null) {
+                t.removeBlock(db);
+            }
         }
+
+        EditApplier applier = plugin.getEditApplier();
+        applier.submit(this, cells, state -> {
+            DexBlock cell = new DexBlock(state);
+            if (t != null) {
+                t.addBlock(cell);
+            }
+        }, null);
+        applier.submit(this, split, DexBlock::remove, () -> {
+            if (t != null) {
+                t.commit();
+            }
+            if (onComplete != null) {
+                onComplete.run();
+            }
+        });
+        return cells.size();
     }
 
 }
@@ -11,7 +11,7 @@ import org.bukkit.scheduler.BukkitRunnable;
 public class RotationAnimation extends Animation {
 
     private RotationTransaction t;
-    private boolean interpolation = true;
+    private boolean interpolation = true, transformationMode = false;
 
     public RotationAnimation(DexterityDisplay display, int ticks, RotationPlan rotation) {
         super(display, ticks);
@@ -32,7 +32,11 @@ public class RotationAnimation extends Animation {
                 if (isPaused()) {
                     return;
                 }
-                display.getRotationManager().rotate(rot);
+                if (transformationMode) {
+                    display.getRotationManager().rotateInterpolated(rot.getQuaternion(), getFrameRate());
+                } else {
+                    display.getRotationManager().rotate(rot);
+                }
                 tick();
             }
         });
@@ -42,11 +46,26 @@ public class RotationAnimation extends Animation {
         interpolation = b;
     }
 
+    /**
+     * Rotates each frame through the blocks' transformations, letting the client interpolate between frames instead of teleporting every block.
+     * The blocks are moved to their final locations when the animation finishes.
+     *
+     * @param b
+     * @see me.c7dev.dexterity.api.DexRotation#rotateInterpolated(org.joml.Quaterniond, int)
+     */
+    public void setTransformationMode(boolean b) {
+        transformationMode = b;
+    }
+
+    public boolean isTransformationMode() {
+        return transformationMode;
+    }
+
     @Override
     public void beforeStart() {
         t = new RotationTransaction(super.getDisplay());
         if (!interpolation && !super.getDisplay().getPlugin().isLegacy()) {
-            for (DexBlock db : super.getDisplay().getBlocks()) {
+            for (DexBlock db : super.getDisplay().getBlocksView()) {
                 db.getEntity().setTeleportDuration(0);
             }
         }
@@ -54,8 +73,9 @@ public class RotationAnimation extends Animation {
 
     @Override
     public void beforeFinish() {
+        super.getDisplay().getRotationManager(true).bakeInterpolated();
         if (!interpolation && !super.getDisplay().getPlugin().isLegacy()) {
-            for (DexBlock db : super.getDisplay().getBlocks()) {
+            for (DexBlock db : super.getDisplay().getBlocksView()) {
                 db.getEntity().setTeleportDuration(DexBlock.TELEPORT_DURATION);
             }
         }
@@ -67,6 +87,7 @@ public class RotationAnimation extends Animation {
             super.setPaused(true);
         }
         Location center = super.getDisplay().getCenter();
+        super.getDisplay().getRotationManager(true).bakeInterpolated();
         t.commit();
         t.undo();
         super.getDisplay().teleport(center);
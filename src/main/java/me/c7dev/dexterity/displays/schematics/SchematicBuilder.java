@@ -341,7 +341,7 @@ public class SchematicBuilder {
         d.sortBlocks();
         double epsilon = 0.00001;
         Token block_delimiter = specifierMap.get(TokenType.BLOCK_DELIMITER), display_delimiter = specifierMap.get(TokenType.DISPLAY_DELIMITER);
-        for (DexBlock db : d.getBlocks()) {
+        for (DexBlock db : d.getBlocksView()) {
             addToken(getString(TokenType.BLOCKDATA, db.getEntity().getBlock().getAsString().replaceFirst("minecraft:", "")));
 
             Vector diff = db.getLocation().toVector().subtract(center); //from root display
@@ -0,0 +1,169 @@
+package me.c7dev.dexterity.displays.storage;
+
+import org.bukkit.Bukkit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Applies saves and deletes to a {@link DisplayStorage} on a single background thread, in the order they were submitted.
+ * Records must be snapshotted on the main thread before being submitted. The labels of records that could not be written
+ * are reported back so that their displays can be saved again.
+ */
+public class AsyncDisplayWriter {
+
+    private final DisplayStorage storage;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Dexterity Display Writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final Consumer<List<String>> onFailure;
+    private final LinkedHashSet<String> unflushed = new LinkedHashSet<>(); //only accessed by the writer thread
+    private volatile boolean failed = false;
+    private int failures = 0, failuresChecked = 0; //only accessed by the writer thread
+
+    /**
+     * @param storage   The storage to write to
+     * @param onFailure Run from the writer thread with the labels of the saved records that did not reach the disk, or null
+     */
+    public AsyncDisplayWriter(DisplayStorage storage, Consumer<List<String>> onFailure) {
+        this.storage = storage;
+        this.onFailure = onFailure;
+    }
+
+    public DisplayStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Queues display snapshots to be written
+     *
+     * @param records
+     */
+    public void save(Collection<DisplayRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        submit(() -> {
+            for (DisplayRecord r : records) {
+                unflushed.add(r.label);
+                storage.save(r);
+            }
+        });
+    }
+
+    /**
+     * Queues a stored display to be deleted
+     *
+     * @param label
+     */
+    public void delete(String label) {
+        submit(() -> storage.delete(label));
+    }
+
+    private interface StorageOp {
+        void run() throws IOException;
+    }
+
+    //the last of consecutive writes flushes them all to disk at once
+    private void submit(StorageOp op) {
+        queued.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                op.run();
+            } catch (Exception ex) {
+                fail(ex);
+            }
+            if (queued.decrementAndGet() == 0) {
+                flush();
+            }
+        });
+    }
+
+    /**
+     * @return false if the storage could not write the pending changes to disk
+     */
+    private boolean flush() {
+        try {
+            storage.flush();
+        } catch (Exception ex) {
+            fail(ex);
+            return false;
+        }
+        unflushed.clear();
+        return true;
+    }
+
+    private void fail(Exception ex) {
+        failed = true;
+        failures++;
+        ex.printStackTrace();
+        Bukkit.getLogger().severe("Could not write saved displays to disk!");
+        if (onFailure != null && !unflushed.isEmpty()) {
+            onFailure.accept(new ArrayList<>(unflushed));
+        }
+        unflushed.clear();
+    }
+
+    /**
+     * Runs a task on the writer thread once every write submitted so far is flushed to disk
+     *
+     * @param onSuccess Run if every write since the previous call was flushed
+     * @param onFailure Run instead if any write since the previous call failed, or null
+     */
+    public void runAfterPending(Runnable onSuccess, Runnable onFailure) {
+        executor.execute(() -> {
+            boolean success = flush() && failures == failuresChecked;
+            failuresChecked = failures;
+            if (success) {
+                onSuccess.run();
+            } else if (onFailure != null) {
+                onFailure.run();
+            }
+        });
+    }
+
+    /**
+     * Blocks until every write submitted so far has been flushed
+     */
+    public void waitForPending() {
+        Future<?> f = executor.submit(this::flush);
+        try {
+            f.get();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Finishes the pending writes and stops the writer thread
+     *
+     * @return true if every write reached the display storage without an error
+     */
+    public boolean shutdown() {
+        executor.execute(this::flush);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                Bukkit.getLogger().severe("Timed out while waiting for saved displays to be written!");
+                return false;
+            }
+        } catch (InterruptedException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+        return !failed;
+    }
+
+}
@@ -0,0 +1,588 @@
+package me.c7dev.dexterity.displays.storage;
+
+import me.c7dev.dexterity.util.DexterityException;
+import me.c7dev.dexterity.util.InteractionCommand;
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Stores every saved display in a single append-only binary file, read with positional {@link FileChannel} reads.
+ * <p>
+ * Layout: a header (magic, version), then frames of [length][payload][crc32]. A payload is either a put of
+ * [type][label][world][chunk keys][record] or a delete of [type][label], and later frames replace earlier ones for the
+ * same label. A flush only appends the changed displays. The file is rewritten with only the live frames once most of
+ * it is replaced frames.
+ * <p>
+ * Each record starts with a fixed-size block of the center, scale, rotation, seat offset and list sizes, followed by
+ * the block UUIDs, owner UUIDs, strings, drop item, commands and chunk keys.
+ */
+public class BinaryDisplayStorage implements DisplayStorage {
+
+    public static final int MAGIC = 0x44455853, VERSION = 3;
+    public static final int RECORD_FIXED_SIZE = 1 + (3 * 8) + (2 * 4) + (3 * 8) + (3 * 4) + 8 + (3 * 4);
+    private static final int HEADER_SIZE = 4 + 2;
+    private static final long COMPACT_MIN_SIZE = 1024 * 1024;
+    private static final byte FRAME_PUT = 1, FRAME_DELETE = 2;
+    private static final byte FLAG_UNLISTED = 1;
+    private static final byte CMD_LEFT = 1, CMD_RIGHT = 2, CMD_PLAYER = 4;
+
+    private final File file;
+    private LinkedHashMap<String, IndexEntry> index = new LinkedHashMap<>();
+    private final LinkedHashMap<String, DisplayRecord> pending = new LinkedHashMap<>();
+    private final Set<String> deleted = new HashSet<>(); //in the file, but deleted since the last flush
+    private FileChannel channel;
+    private long end = 0, live = 0; //end of the last whole frame, and the bytes of the frames that are not replaced
+
+    public BinaryDisplayStorage(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        index.clear();
+        pending.clear();
+        deleted.clear();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort((short) VERSION).flip();
+            write(channel, header, 0);
+            end = HEADER_SIZE;
+            live = 0;
+            return;
+        }
+
+        ByteBuffer header = read(0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException(file.getName() + " is not a Dexterity display file!");
+        }
+        int version = header.getShort();
+        if (version > VERSION) {
+            throw new IOException(file.getName() + " was written by a newer version of Dexterity (" + version + ")!");
+        }
+        if (version < 3) {
+            convertIndexedFile(version, size);
+            return;
+        }
+
+        long pos = HEADER_SIZE;
+        live = 0;
+        CRC32 crc = new CRC32();
+        while (pos + 8 <= size) {
+            int length = read(pos, 4).getInt();
+            if (length <= 0 || pos + 8 + length > size) {
+                break;
+            }
+            ByteBuffer payload = read(pos + 4, length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if (read(pos + 4 + length, 4).getInt() != (int) crc.getValue()) {
+                break;
+            }
+
+            byte type = payload.get();
+            String label = readString(payload);
+            IndexEntry old;
+            if (type == FRAME_PUT) {
+                IndexEntry entry = new IndexEntry(pos, 8 + length);
+                entry.world = readString(payload);
+                entry.chunks = readChunks(payload);
+                entry.offset = pos + 4 + payload.position();
+                entry.length = payload.remaining();
+                old = index.put(label, entry);
+                live += entry.frameLength;
+            } else {
+                old = index.remove(label);
+            }
+            if (old != null) {
+                live -= old.frameLength;
+            }
+            pos += 8 + length;
+        }
+        if (pos < size) { //torn frame from a crash during a flush
+            Bukkit.getLogger().warning("Discarded " + (size - pos) + " bytes of an incomplete write at the end of " + file.getName() + ".");
+            channel.truncate(pos);
+        }
+        end = pos;
+    }
+
+    /**
+     * Rewrites a file from before the append-only layout, which had an index of every record in its header
+     */
+    private void convertIndexedFile(int version, long size) throws IOException {
+        ByteBuffer b = read(0, (int) size);
+        b.position(HEADER_SIZE);
+        int count = b.getInt();
+        List<DisplayRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String label = readString(b);
+            int offset = b.getInt(), length = b.getInt();
+            if (version >= 2) {
+                readString(b);
+                readChunks(b);
+            }
+            records.add(decode(label, b.duplicate().position(offset).limit(offset + length)));
+        }
+
+        Path temp = tempPath();
+        LinkedHashMap<String, IndexEntry> entries = new LinkedHashMap<>();
+        long newEnd;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(out, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort((short) VERSION).flip(), 0);
+            newEnd = appendFrames(out, HEADER_SIZE, records, List.of(), entries);
+            out.force(true);
+        }
+        replaceFile(temp);
+        index = entries;
+        end = newEnd;
+        live = newEnd - HEADER_SIZE;
+    }
+
+    @Override
+    public synchronized Set<String> getLabels() {
+        Set<String> r = new HashSet<>(index.keySet());
+        r.removeAll(deleted);
+        r.addAll(pending.keySet());
+        return r;
+    }
+
+    @Override
+    public synchronized String getWorld(String label) {
+        DisplayRecord r = pending.get(label);
+        if (r != null) {
+            return r.world;
+        }
+        IndexEntry entry = deleted.contains(label) ? null : index.get(label);
+        return entry == null ? null : entry.world;
+    }
+
+    @Override
+    public synchronized long[] getChunkKeys(String label) {
+        DisplayRecord r = pending.get(label);
+        if (r != null) {
+            return r.chunks;
+        }
+        IndexEntry entry = deleted.contains(label) ? null : index.get(label);
+        return entry == null ? null : entry.chunks;
+    }
+
+    @Override
+    public DisplayRecord load(String label) {
+        ByteBuffer b;
+        synchronized (this) {
+            DisplayRecord r = pending.get(label);
+            if (r != null) {
+                return r;
+            }
+            IndexEntry entry = deleted.contains(label) ? null : index.get(label);
+            if (entry == null) {
+                return null;
+            }
+            try {
+                b = read(entry.offset, entry.length);
+            } catch (IOException ex) {
+                throw new DexterityException("Could not read display '" + label + "': " + ex.getMessage());
+            }
+        }
+        return decode(label, b); //decoded outside of the lock so that displays can be loaded in parallel
+    }
+
+    @Override
+    public synchronized void save(DisplayRecord record) {
+        deleted.remove(record.label);
+        pending.put(record.label, record);
+    }
+
+    @Override
+    public synchronized void delete(String label) {
+        pending.remove(label);
+        if (index.containsKey(label)) {
+            deleted.add(label);
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+
+        //only the changed displays are appended, after the last whole frame
+        LinkedHashMap<String, IndexEntry> entries = new LinkedHashMap<>();
+        long newEnd = appendFrames(channel, end, pending.values(), deleted, entries);
+        channel.truncate(newEnd);
+        channel.force(false);
+
+        for (String label : deleted) {
+            IndexEntry old = index.remove(label);
+            if (old != null) {
+                live -= old.frameLength;
+            }
+        }
+        for (Entry<String, IndexEntry> entry : entries.entrySet()) {
+            IndexEntry old = index.put(entry.getKey(), entry.getValue());
+            if (old != null) {
+                live -= old.frameLength;
+            }
+            live += entry.getValue().frameLength;
+        }
+        end = newEnd;
+        pending.clear();
+        deleted.clear();
+
+        if (end > COMPACT_MIN_SIZE && end - HEADER_SIZE > 2 * live) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the file with only the frames that are not replaced by later ones
+     */
+    private void compact() throws IOException {
+        Path temp = tempPath();
+        LinkedHashMap<String, IndexEntry> entries = new LinkedHashMap<>();
+        long pos = HEADER_SIZE;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(out, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort((short) VERSION).flip(), 0);
+            for (Entry<String, IndexEntry> entry : index.entrySet()) {
+                IndexEntry old = entry.getValue();
+                long copied = 0;
+                while (copied < old.frameLength) {
+                    copied += channel.transferTo(old.frameOffset + copied, old.frameLength - copied, out.position(pos + copied));
+                }
+                IndexEntry moved = new IndexEntry(pos, old.frameLength);
+                moved.offset = old.offset - old.frameOffset + pos;
+                moved.length = old.length;
+                moved.world = old.world;
+                moved.chunks = old.chunks;
+                entries.put(entry.getKey(), moved);
+                pos += old.frameLength;
+            }
+            out.force(true);
+        }
+        replaceFile(temp);
+        index = entries;
+        end = pos;
+        live = pos - HEADER_SIZE;
+    }
+
+    /**
+     * Encodes and writes frames for the puts and deletes
+     *
+     * @param entries Receives the index entries of the puts
+     * @return The position after the last frame
+     */
+    private long appendFrames(FileChannel out, long position, Collection<DisplayRecord> puts, Collection<String> deletes,
+                              LinkedHashMap<String, IndexEntry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frames = new DataOutputStream(bytes);
+        CRC32 crc = new CRC32();
+        for (String label : deletes) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream p = new DataOutputStream(payload);
+            p.writeByte(FRAME_DELETE);
+            writeString(p, label);
+            p.flush();
+            writeFrame(frames, payload.toByteArray(), crc);
+        }
+        for (DisplayRecord r : puts) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream p = new DataOutputStream(payload);
+            p.writeByte(FRAME_PUT);
+            writeString(p, r.label);
+            writeString(p, r.world);
+            writeChunks(p, r.chunks);
+            p.flush();
+            int prefix = payload.size();
+            p.write(encode(r));
+            p.flush();
+
+            long frameOffset = position + bytes.size();
+            IndexEntry entry = new IndexEntry(frameOffset, 8 + payload.size());
+            entry.offset = frameOffset + 4 + prefix;
+            entry.length = payload.size() - prefix;
+            entry.world = r.world;
+            entry.chunks = r.chunks;
+            entries.put(r.label, entry);
+            writeFrame(frames, payload.toByteArray(), crc);
+        }
+        frames.flush();
+        write(out, ByteBuffer.wrap(bytes.toByteArray()), position);
+        return position + bytes.size();
+    }
+
+    private static void writeFrame(DataOutputStream out, byte[] payload, CRC32 crc) throws IOException {
+        crc.reset();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Replaces the file with a rewritten copy. The channel is closed first so that the file can be replaced on Windows.
+     */
+    private void replaceFile(Path temp) throws IOException {
+        Path target = file.toPath();
+        channel.close();
+        try {
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            channel = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    private Path tempPath() {
+        return new File(file.getAbsolutePath() + ".tmp").toPath();
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length);
+        while (b.hasRemaining()) {
+            if (channel.read(b, position + b.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return b.flip();
+    }
+
+    private static void write(FileChannel out, ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) {
+            position += out.write(b, position);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        channel = null;
+        index.clear();
+    }
+
+    static byte[] encode(DisplayRecord r) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(RECORD_FIXED_SIZE + (r.uuids.size() * 16) + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        //fixed block
+        out.writeByte(r.unlisted ? FLAG_UNLISTED : 0);
+        out.writeDouble(r.centerX);
+        out.writeDouble(r.centerY);
+        out.writeDouble(r.centerZ);
+        out.writeFloat(r.centerYaw);
+        out.writeFloat(r.centerPitch);
+        out.writeDouble(r.scaleX);
+        out.writeDouble(r.scaleY);
+        out.writeDouble(r.scaleZ);
+        out.writeFloat(r.yaw);
+        out.writeFloat(r.pitch);
+        out.writeFloat(r.roll);
+        out.writeDouble(r.seatOffset);
+        out.writeInt(r.uuids.size());
+        out.writeInt(r.owners.size());
+        out.writeInt(r.commands.size());
+
+        for (UUID u : r.uuids) {
+            out.writeLong(u.getMostSignificantBits());
+            out.writeLong(u.getLeastSignificantBits());
+        }
+        for (UUID u : r.owners) {
+            out.writeLong(u.getMostSignificantBits());
+            out.writeLong(u.getLeastSignificantBits());
+        }
+
+        writeString(out, r.world);
+        writeString(out, r.parent);
+        writeString(out, r.itemSchemName);
+        if (r.item == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] item = r.item.serializeAsBytes();
+            out.writeInt(item.length);
+            out.write(item);
+        }
+
+        for (InteractionCommand cmd : r.commands) {
+            writeCommand(out, cmd);
+        }
+
+        if (r.chunks == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(r.chunks.length);
+            for (long key : r.chunks) {
+                out.writeLong(key);
+            }
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static DisplayRecord decode(String label, ByteBuffer b) {
+        DisplayRecord r = new DisplayRecord(label);
+        try {
+            r.unlisted = (b.get() & FLAG_UNLISTED) != 0;
+            r.centerX = b.getDouble();
+            r.centerY = b.getDouble();
+            r.centerZ = b.getDouble();
+            r.centerYaw = b.getFloat();
+            r.centerPitch = b.getFloat();
+            r.scaleX = b.getDouble();
+            r.scaleY = b.getDouble();
+            r.scaleZ = b.getDouble();
+            r.yaw = b.getFloat();
+            r.pitch = b.getFloat();
+            r.roll = b.getFloat();
+            r.seatOffset = b.getDouble();
+            int uuidCount = b.getInt(), ownerCount = b.getInt(), cmdCount = b.getInt();
+
+            for (int i = 0; i < uuidCount; i++) {
+                r.uuids.add(new UUID(b.getLong(), b.getLong()));
+            }
+            for (int i = 0; i < ownerCount; i++) {
+                r.owners.add(new UUID(b.getLong(), b.getLong()));
+            }
+
+            r.world = readString(b);
+            r.parent = readString(b);
+            r.itemSchemName = readString(b);
+            int itemLength = b.getInt();
+            if (itemLength >= 0) {
+                byte[] item = new byte[itemLength];
+                b.get(item);
+                r.item = ItemStack.deserializeBytes(item);
+            }
+
+            for (int i = 0; i < cmdCount; i++) {
+                r.commands.add(readCommand(b));
+            }
+
+            if (b.hasRemaining()) { //not present in version 1
+                r.chunks = readChunks(b);
+            }
+        } catch (RuntimeException ex) {
+            throw new DexterityException("Corrupted record for display '" + label + "': " + ex.getMessage());
+        }
+        return r;
+    }
+
+    static void writeCommand(DataOutputStream out, InteractionCommand cmd) throws IOException {
+        writeString(out, cmd.getCmd());
+        writeString(out, cmd.getPermission());
+        out.writeByte((cmd.isLeft() ? CMD_LEFT : 0) | (cmd.isRight() ? CMD_RIGHT : 0) | (cmd.isByPlayer() ? CMD_PLAYER : 0));
+    }
+
+    static InteractionCommand readCommand(ByteBuffer b) {
+        InteractionCommand cmd = new InteractionCommand(readString(b));
+        String perm = readString(b);
+        if (perm != null) {
+            cmd.setPermission(perm);
+        }
+        byte flags = b.get();
+        cmd.setLeft((flags & CMD_LEFT) != 0);
+        cmd.setRight((flags & CMD_RIGHT) != 0);
+        cmd.setByPlayer((flags & CMD_PLAYER) != 0);
+        return cmd;
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeChunks(DataOutputStream out, long[] chunks) throws IOException {
+        if (chunks == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(chunks.length);
+        for (long key : chunks) {
+            out.writeLong(key);
+        }
+    }
+
+    private static long[] readChunks(ByteBuffer b) {
+        int length = b.getInt();
+        if (length < 0) {
+            return null;
+        }
+        long[] chunks = new long[length];
+        for (int i = 0; i < length; i++) {
+            chunks[i] = b.getLong();
+        }
+        return chunks;
+    }
+
+    static String readString(ByteBuffer b) {
+        int length = b.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class IndexEntry {
+        final long frameOffset;
+        final int frameLength;
+        long offset; //of the record within the frame
+        int length;
+        String world;
+        long[] chunks; //null if unknown
+
+        IndexEntry(long frameOffset, int frameLength) {
+            this.frameOffset = frameOffset;
+            this.frameLength = frameLength;
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package me.c7dev.dexterity.displays.storage;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tracks the saved displays that are waiting for the chunks holding their block entities to load
+ */
+public class DisplayChunkIndex {
+
+    private final HashMap<String, HashMap<Long, Set<String>>> byChunk = new HashMap<>(); //world -> chunk key -> labels
+    private final HashMap<String, String> worlds = new HashMap<>();
+    private final HashMap<String, long[]> chunks = new HashMap<>();
+
+    /**
+     * Registers a display to be loaded once all of its chunks are loaded
+     *
+     * @param label
+     * @param world
+     * @param keys  The chunk keys containing the display's block entities
+     */
+    public void add(String label, String world, long[] keys) {
+        remove(label);
+        worlds.put(label, world);
+        chunks.put(label, keys);
+        HashMap<Long, Set<String>> worldChunks = byChunk.computeIfAbsent(world, k -> new HashMap<>());
+        for (long key : keys) {
+            worldChunks.computeIfAbsent(key, k -> new HashSet<>()).add(label);
+        }
+    }
+
+    public void remove(String label) {
+        String world = worlds.remove(label);
+        long[] keys = chunks.remove(label);
+        if (world == null) {
+            return;
+        }
+        HashMap<Long, Set<String>> worldChunks = byChunk.get(world);
+        for (long key : keys) {
+            Set<String> labels = worldChunks.get(key);
+            if (labels != null && labels.remove(label) && labels.isEmpty()) {
+                worldChunks.remove(key);
+            }
+        }
+        if (worldChunks.isEmpty()) {
+            byChunk.remove(world);
+        }
+    }
+
+    /**
+     * @param c
+     * @return The labels of the waiting displays that have block entities in the chunk
+     */
+    public Set<String> getLabels(Chunk c) {
+        HashMap<Long, Set<String>> worldChunks = byChunk.get(c.getWorld().getName());
+        if (worldChunks == null) {
+            return Collections.emptySet();
+        }
+        Set<String> labels = worldChunks.get(c.getChunkKey());
+        return labels == null ? Collections.emptySet() : new HashSet<>(labels);
+    }
+
+    public Set<String> getLabels() {
+        return new HashSet<>(worlds.keySet());
+    }
+
+    public boolean isEmpty() {
+        return worlds.isEmpty();
+    }
+
+    public void clear() {
+        byChunk.clear();
+        worlds.clear();
+        chunks.clear();
+    }
+
+    /**
+     * @param label
+     * @param loaded A chunk that is currently being loaded and can be treated as loaded, or null
+     * @return True if every chunk of the waiting display has its entities loaded
+     */
+    public boolean isReady(String label, Chunk loaded) {
+        long[] keys = chunks.get(label);
+        return keys != null && areChunksLoaded(worlds.get(label), keys, loaded);
+    }
+
+    /**
+     * @param worldName
+     * @param keys
+     * @param loaded    A chunk that is currently being loaded and can be treated as loaded, or null
+     * @return True if the world is loaded and every chunk has its entities loaded
+     */
+    public static boolean areChunksLoaded(String worldName, long[] keys, Chunk loaded) {
+        if (worldName == null) {
+            return false;
+        }
+        World world = loaded != null && loaded.getWorld().getName().equals(worldName) ? loaded.getWorld() : Bukkit.getWorld(worldName);
+        if (world == null) {
+            return false;
+        }
+        for (long key : keys) {
+            if (loaded != null && loaded.getWorld() == world && loaded.getChunkKey() == key) {
+                continue;
+            }
+            int x = (int) key, z = (int) (key >> 32);
+            if (!world.isChunkLoaded(x, z) || !world.getChunkAt(x, z).isEntitiesLoaded()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
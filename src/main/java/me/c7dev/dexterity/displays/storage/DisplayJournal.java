@@ -0,0 +1,569 @@
+package me.c7dev.dexterity.displays.storage;
+
+import me.c7dev.dexterity.displays.DexterityDisplay;
+import me.c7dev.dexterity.displays.animation.SitAnimation;
+import me.c7dev.dexterity.util.InteractionCommand;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of display mutations so that edits made since the last save survive a crash.
+ * <p>
+ * Entries are buffered on the main thread and written by a background thread in batched group commits.
+ * Each entry is framed as [length][type][label][payload][crc32], so a torn write at the end of the file is ignored on replay.
+ * Once the journal grows past the compaction threshold, it is rotated out and deleted after the display storage has caught up.
+ */
+public class DisplayJournal {
+
+    public static final byte PUT = 1, DELETE = 2, BLOCKS_ADD = 3, BLOCKS_REMOVE = 4, TRANSFORM = 5, OWNERS = 6, COMMANDS = 7, LISTED = 8, SEAT = 9, DROP_ITEM = 10, PARENT = 11;
+
+    private final File file, compactingFile;
+    private final long commitIntervalMs, compactThreshold;
+    private final Runnable compactionCallback;
+    private final Object lock = new Object();
+    private List<PendingEntry> buffer = new ArrayList<>(), rotateBatch = null;
+    private final HashMap<String, PendingEntry> lastEntry = new HashMap<>(); //latest buffered entry per label, for coalescing
+    private ScheduledExecutorService executor;
+    private FileChannel channel;
+    private volatile boolean paused = false, compacting = false, rotated = false;
+    private long size = 0;
+
+    /**
+     * @param file               The journal file
+     * @param commitIntervalMs   Milliseconds between group commits
+     * @param compactThreshold   Size in bytes after which the compaction callback is run
+     * @param compactionCallback Run from the journal thread when the journal should be compacted
+     */
+    public DisplayJournal(File file, long commitIntervalMs, long compactThreshold, Runnable compactionCallback) {
+        this.file = file;
+        this.compactingFile = new File(file.getAbsolutePath() + ".compacting");
+        this.commitIntervalMs = commitIntervalMs;
+        this.compactThreshold = compactThreshold;
+        this.compactionCallback = compactionCallback;
+    }
+
+    /**
+     * Starts accepting entries and schedules the group commits
+     */
+    public void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Dexterity Display Journal");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::commit, commitIntervalMs, commitIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return channel != null;
+    }
+
+    /**
+     * Stops recording entries, used while displays are being loaded from storage
+     *
+     * @param b
+     */
+    public void setPaused(boolean b) {
+        paused = b;
+    }
+
+    private boolean accepts(DexterityDisplay d) {
+        return channel != null && !paused && d.isSaved();
+    }
+
+    public void logListed(DexterityDisplay d) {
+        if (!accepts(d)) {
+            return;
+        }
+        append(LISTED, d.getLabel(), new byte[]{(byte) (d.isListed() ? 0 : 1)}, null);
+    }
+
+    /**
+     * Records the seat offset of the display's {@link SitAnimation}, the only animation that is persisted
+     *
+     * @param d
+     */
+    public void logSeat(DexterityDisplay d) {
+        if (!accepts(d)) {
+            return;
+        }
+        SitAnimation seat = (SitAnimation) d.getAnimation(SitAnimation.class);
+        append(SEAT, d.getLabel(), ByteBuffer.allocate(8).putDouble(seat == null ? Double.NaN : seat.getSeatOffset().getY()).array(), null);
+    }
+
+    public void logDropItem(DexterityDisplay d) {
+        if (!accepts(d)) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            ItemStack item = d.getDropItem();
+            BinaryDisplayStorage.writeString(out, item == null ? null : d.getDropItemSchematicName());
+            if (item == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] itemBytes = item.serializeAsBytes();
+                out.writeInt(itemBytes.length);
+                out.write(itemBytes);
+            }
+            out.flush();
+            append(DROP_ITEM, d.getLabel(), bytes.toByteArray(), null);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void logParent(DexterityDisplay d) {
+        if (!accepts(d)) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            BinaryDisplayStorage.writeString(out, d.getParent() == null ? null : d.getParent().getLabel());
+            out.flush();
+            append(PARENT, d.getLabel(), bytes.toByteArray(), null);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void logRecord(DisplayRecord r) {
+        if (channel == null || paused) {
+            return;
+        }
+        try {
+            append(PUT, r.label, BinaryDisplayStorage.encode(r), null);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void logDelete(String label) {
+        if (channel == null || paused || label == null) {
+            return;
+        }
+        append(DELETE, label, null, null);
+    }
+
+    public void logBlock(DexterityDisplay d, UUID block, boolean added) {
+        if (!accepts(d)) {
+            return;
+        }
+        append(added ? BLOCKS_ADD : BLOCKS_REMOVE, d.getLabel(), null, block);
+    }
+
+    public void logTransform(DexterityDisplay d) {
+        if (!accepts(d)) {
+            return;
+        }
+        DisplayRecord t = new DisplayRecord(d.getLabel());
+        t.setTransform(d);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+            DataOutputStream out = new DataOutputStream(bytes);
+            BinaryDisplayStorage.writeString(out, t.world);
+            out.writeDouble(t.centerX);
+            out.writeDouble(t.centerY);
+            out.writeDouble(t.centerZ);
+            out.writeFloat(t.centerYaw);
+            out.writeFloat(t.centerPitch);
+            out.writeDouble(t.scaleX);
+            out.writeDouble(t.scaleY);
+            out.writeDouble(t.scaleZ);
+            out.writeFloat(t.yaw);
+            out.writeFloat(t.pitch);
+            out.writeFloat(t.roll);
+            out.flush();
+            append(TRANSFORM, d.getLabel(), bytes.toByteArray(), null);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    public void logOwners(DexterityDisplay d) {
+        if (!accepts(d)) {
+            return;
+        }
+        OfflinePlayer[] owners = d.getOwners();
+        ByteBuffer b = ByteBuffer.allocate(4 + (owners.length * 16));
+        b.putInt(owners.length);
+        for (OfflinePlayer owner : owners) {
+            b.putLong(owner.getUniqueId().getMostSignificantBits());
+            b.putLong(owner.getUniqueId().getLeastSignificantBits());
+        }
+        append(OWNERS, d.getLabel(), b.array(), null);
+    }
+
+    public void logCommands(DexterityDisplay d) {
+        if (!accepts(d)) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            InteractionCommand[] cmds = d.getCommands();
+            out.writeInt(cmds.length);
+            for (InteractionCommand cmd : cmds) {
+                BinaryDisplayStorage.writeCommand(out, cmd);
+            }
+            out.flush();
+            append(COMMANDS, d.getLabel(), bytes.toByteArray(), null);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void append(byte type, String label, byte[] data, UUID block) {
+        synchronized (lock) {
+            PendingEntry last = lastEntry.get(label);
+            if (last != null && last.type == type) { //coalesce with the previous entry for this label
+                if (block != null) {
+                    last.blocks.add(block);
+                } else {
+                    last.data = data;
+                }
+                return;
+            }
+            PendingEntry e = new PendingEntry(type, label, data);
+            if (block != null) {
+                e.blocks.add(block);
+            }
+            buffer.add(e);
+            lastEntry.put(label, e);
+        }
+    }
+
+    /**
+     * Writes the buffered entries to disk with a single write and fsync
+     */
+    private void commit() {
+        List<PendingEntry> batch, rotating;
+        synchronized (lock) {
+            batch = buffer;
+            rotating = rotateBatch;
+            buffer = new ArrayList<>();
+            rotateBatch = null;
+            lastEntry.clear();
+        }
+
+        try {
+            if (rotating != null) {
+                write(rotating);
+                channel.close();
+                if (compactingFile.exists()) { //left by a failed compaction, so its entries are older
+                    Files.write(compactingFile.toPath(), Files.readAllBytes(file.toPath()), StandardOpenOption.APPEND);
+                    Files.delete(file.toPath());
+                } else {
+                    Files.move(file.toPath(), compactingFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                size = 0;
+            }
+            write(batch);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            Bukkit.getLogger().severe("Could not write to the display journal!");
+            return;
+        }
+
+        if (size > compactThreshold && !compacting && compactionCallback != null) {
+            compacting = true;
+            compactionCallback.run();
+        }
+    }
+
+    private void write(List<PendingEntry> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        CRC32 crc = new CRC32();
+        for (PendingEntry e : batch) {
+            ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+            DataOutputStream entry = new DataOutputStream(entryBytes);
+            entry.writeByte(e.type);
+            BinaryDisplayStorage.writeString(entry, e.label);
+            if (e.data != null) {
+                entry.write(e.data);
+            } else if (!e.blocks.isEmpty()) {
+                entry.writeInt(e.blocks.size());
+                for (UUID u : e.blocks) {
+                    entry.writeLong(u.getMostSignificantBits());
+                    entry.writeLong(u.getLeastSignificantBits());
+                }
+            }
+            entry.flush();
+            byte[] payload = entryBytes.toByteArray();
+
+            crc.reset();
+            crc.update(payload);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeInt((int) crc.getValue());
+        }
+        out.flush();
+
+        ByteBuffer b = ByteBuffer.wrap(bytes.toByteArray());
+        while (b.hasRemaining()) {
+            channel.write(b);
+        }
+        channel.force(false);
+        size += bytes.size();
+    }
+
+    /**
+     * Rotates the journal so that the entries recorded so far can be discarded once the display storage contains them.
+     * Must be called on the main thread, immediately before the modified displays are snapshotted.
+     *
+     * @return false if there is already a compaction in progress
+     * @see #finishCompaction()
+     */
+    public boolean startCompaction() {
+        if (channel == null || rotated) {
+            return false;
+        }
+        compacting = true;
+        rotated = true;
+        synchronized (lock) {
+            rotateBatch = buffer;
+            buffer = new ArrayList<>();
+            lastEntry.clear();
+        }
+        executor.execute(this::commit);
+        return true;
+    }
+
+    /**
+     * Deletes the rotated journal, must only be run once the display storage has flushed the snapshot taken after {@link #startCompaction()}
+     */
+    public void finishCompaction() {
+        if (executor == null) {
+            return;
+        }
+        executor.execute(() -> {
+            compactingFile.delete();
+            compacting = false;
+            rotated = false;
+        });
+    }
+
+    /**
+     * Keeps the rotated journal because the display storage could not flush the snapshot taken after
+     * {@link #startCompaction()}. Its entries are kept in front of the current journal by the next compaction.
+     */
+    public void abortCompaction() {
+        if (executor == null) {
+            return;
+        }
+        executor.execute(() -> {
+            compacting = false;
+            rotated = false;
+        });
+    }
+
+    /**
+     * Commits the remaining entries and closes the journal file
+     */
+    public void close() {
+        close(false);
+    }
+
+    /**
+     * Closes the journal file
+     *
+     * @param discard If true, deletes the journal because the display storage already contains every entry in it, such
+     *                as after the final save of a clean shutdown
+     */
+    public void close(boolean discard) {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            commit();
+            channel.close();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+        channel = null;
+        executor = null;
+        if (discard) {
+            compactingFile.delete();
+            file.delete();
+        }
+    }
+
+    /**
+     * Applies any journal entries left over from a crash to the display storage, then deletes the journal.
+     * Must be called before {@link #open()}.
+     *
+     * @param storage The storage holding the last snapshot
+     * @return The number of journal entries that were applied
+     */
+    public int replay(DisplayStorage storage) throws IOException {
+        HashMap<String, DisplayRecord> records = new HashMap<>(); //null value if deleted
+        int count = replayFile(compactingFile, storage, records) + replayFile(file, storage, records);
+        if (count == 0) {
+            compactingFile.delete();
+            file.delete();
+            return 0;
+        }
+
+        for (Entry<String, DisplayRecord> entry : records.entrySet()) {
+            if (entry.getValue() == null) {
+                storage.delete(entry.getKey());
+            } else {
+                storage.save(entry.getValue());
+            }
+        }
+        storage.flush();
+
+        compactingFile.delete();
+        file.delete();
+        return count;
+    }
+
+    private int replayFile(File f, DisplayStorage storage, HashMap<String, DisplayRecord> records) throws IOException {
+        if (!f.exists()) {
+            return 0;
+        }
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(f.toPath()));
+        CRC32 crc = new CRC32();
+        int count = 0;
+
+        while (b.remaining() >= 4) {
+            int length = b.getInt();
+            if (length <= 0 || b.remaining() < length + 4) {
+                Bukkit.getLogger().warning("Ignoring an incomplete entry at the end of the display journal.");
+                break;
+            }
+            ByteBuffer payload = b.slice(b.position(), length);
+            b.position(b.position() + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != b.getInt()) {
+                Bukkit.getLogger().warning("Ignoring a corrupted entry at the end of the display journal.");
+                break;
+            }
+
+            byte type = payload.get();
+            String label = BinaryDisplayStorage.readString(payload);
+            if (type == PUT) {
+                records.put(label, BinaryDisplayStorage.decode(label, payload));
+            } else if (type == DELETE) {
+                records.put(label, null);
+            } else {
+                DisplayRecord r = records.containsKey(label) ? records.get(label) : storage.load(label);
+                if (r != null) {
+                    apply(r, type, payload);
+                    records.put(label, r);
+                }
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private void apply(DisplayRecord r, byte type, ByteBuffer b) {
+        switch (type) {
+            case BLOCKS_ADD, BLOCKS_REMOVE -> {
+                int n = b.getInt();
+                Set<UUID> blocks = new HashSet<>();
+                for (int i = 0; i < n; i++) {
+                    blocks.add(new UUID(b.getLong(), b.getLong()));
+                }
+                if (type == BLOCKS_ADD) {
+                    blocks.removeAll(r.uuids);
+                    r.uuids.addAll(blocks);
+                } else {
+                    r.uuids.removeAll(blocks);
+                }
+            }
+            case TRANSFORM -> {
+                r.world = BinaryDisplayStorage.readString(b);
+                r.centerX = b.getDouble();
+                r.centerY = b.getDouble();
+                r.centerZ = b.getDouble();
+                r.centerYaw = b.getFloat();
+                r.centerPitch = b.getFloat();
+                r.scaleX = b.getDouble();
+                r.scaleY = b.getDouble();
+                r.scaleZ = b.getDouble();
+                r.yaw = b.getFloat();
+                r.pitch = b.getFloat();
+                r.roll = b.getFloat();
+            }
+            case OWNERS -> {
+                int n = b.getInt();
+                r.owners.clear();
+                for (int i = 0; i < n; i++) {
+                    r.owners.add(new UUID(b.getLong(), b.getLong()));
+                }
+            }
+            case COMMANDS -> {
+                int n = b.getInt();
+                r.commands.clear();
+                for (int i = 0; i < n; i++) {
+                    r.commands.add(BinaryDisplayStorage.readCommand(b));
+                }
+            }
+            case LISTED -> r.unlisted = b.get() != 0;
+            case SEAT -> r.seatOffset = b.getDouble();
+            case DROP_ITEM -> {
+                r.itemSchemName = BinaryDisplayStorage.readString(b);
+                int itemLength = b.getInt();
+                if (itemLength >= 0) {
+                    byte[] item = new byte[itemLength];
+                    b.get(item);
+                    r.item = ItemStack.deserializeBytes(item);
+                } else {
+                    r.item = null;
+                }
+            }
+            case PARENT -> r.parent = BinaryDisplayStorage.readString(b);
+            default -> Bukkit.getLogger().warning("Unknown display journal entry type " + type + " for '" + r.label + "'");
+        }
+    }
+
+    private static class PendingEntry {
+        private final byte type;
+        private final String label;
+        private final List<UUID> blocks = new ArrayList<>();
+        private byte[] data;
+
+        private PendingEntry(byte type, String label, byte[] data) {
+            this.type = type;
+            this.label = label;
+            this.data = data;
+        }
+    }
+
+}
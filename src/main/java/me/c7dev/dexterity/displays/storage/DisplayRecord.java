@@ -0,0 +1,137 @@
+package me.c7dev.dexterity.displays.storage;
+
+import me.c7dev.dexterity.api.DexRotation;
+import me.c7dev.dexterity.displays.DexterityDisplay;
+import me.c7dev.dexterity.displays.animation.SitAnimation;
+import me.c7dev.dexterity.util.AxisPair;
+import me.c7dev.dexterity.util.DexBlock;
+import me.c7dev.dexterity.util.InteractionCommand;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.Vector;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Format-independent snapshot of everything that is persisted for a saved {@link DexterityDisplay}
+ */
+public class DisplayRecord {
+
+    public String label, parent, world, itemSchemName;
+    public double centerX = 0, centerY = 0, centerZ = 0, scaleX = 1, scaleY = 1, scaleZ = 1, seatOffset = Double.NaN;
+    public float centerYaw = 0, centerPitch = 0, yaw = 0, pitch = 0, roll = 0;
+    public boolean unlisted = false;
+    public ItemStack item;
+    public List<UUID> uuids = new ArrayList<>(), owners = new ArrayList<>();
+    public List<InteractionCommand> commands = new ArrayList<>();
+    public long[] chunks; //keys of the chunks the block entities are stored in, null if unknown
+
+    public DisplayRecord(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Takes a snapshot of the display's saved data. Must be called on the main thread.
+     *
+     * @param disp The display to snapshot
+     * @return The new record, or null if the display is not saved or has no blocks
+     */
+    public static DisplayRecord of(DexterityDisplay disp) {
+        if (!disp.isSaved() || disp.getLabel().length() == 0 || disp.getBlocksCount() == 0) {
+            return null;
+        }
+
+        DisplayRecord r = new DisplayRecord(disp.getLabel());
+        r.setTransform(disp);
+
+        SitAnimation seat = (SitAnimation) disp.getAnimation(SitAnimation.class);
+        if (seat != null) {
+            r.seatOffset = seat.getSeatOffset().getY();
+        }
+
+        for (OfflinePlayer owner : disp.getOwners()) {
+            r.owners.add(owner.getUniqueId());
+        }
+
+        for (InteractionCommand cmd : disp.getCommands()) {
+            r.commands.add(new InteractionCommand(cmd)); //copied so the writer thread does not read live commands
+        }
+
+        ItemStack item = disp.getDropItem();
+        if (item != null) {
+            r.item = item.clone();
+            r.itemSchemName = disp.getDropItemSchematicName();
+        }
+        r.unlisted = !disp.isListed();
+
+        Set<Long> chunks = new LinkedHashSet<>();
+        boolean interpolated = disp.getRotationManager() != null && disp.getRotationManager().isInterpolated();
+        for (DexBlock db : disp.getBlocksView()) {
+            r.uuids.add(db.getEntity().getUniqueId());
+            Location loc = db.getEntity().getLocation();
+            chunks.add(Chunk.getChunkKey(loc.getBlockX() >> 4, loc.getBlockZ() >> 4));
+            if (interpolated) { //where the entity will be once baked, without moving it now
+                Location baked = db.getVisibleLocation();
+                chunks.add(Chunk.getChunkKey(baked.getBlockX() >> 4, baked.getBlockZ() >> 4));
+            }
+        }
+        r.chunks = new long[chunks.size()];
+        int i = 0;
+        for (long key : chunks) {
+            r.chunks[i++] = key;
+        }
+
+        if (disp.getParent() != null) {
+            r.parent = disp.getParent().getLabel();
+        }
+        return r;
+    }
+
+    /**
+     * Copies the center, scale, and rotation of the display. Must be called on the main thread.
+     *
+     * @param disp
+     */
+    public void setTransform(DexterityDisplay disp) {
+        Location center = disp.getCenter();
+        world = center.getWorld() == null ? null : center.getWorld().getName();
+        centerX = center.getX();
+        centerY = center.getY();
+        centerZ = center.getZ();
+        centerYaw = center.getYaw();
+        centerPitch = center.getPitch();
+        scaleX = disp.getScale().getX();
+        scaleY = disp.getScale().getY();
+        scaleZ = disp.getScale().getZ();
+
+        DexRotation rot = disp.getRotationManager();
+        if (rot != null) {
+            Vector res = new AxisPair(rot.getXAxis(), rot.getZAxis()).getPitchYawRoll();
+            yaw = (float) res.getY();
+            pitch = (float) res.getX();
+            roll = (float) res.getZ();
+        }
+    }
+
+    /**
+     * @return The center location, world may be null if it is not loaded
+     */
+    public Location getCenter() {
+        return new Location(world == null ? null : Bukkit.getWorld(world), centerX, centerY, centerZ, centerYaw, centerPitch);
+    }
+
+    public Vector getScale() {
+        return new Vector(scaleX == 0 ? 1 : scaleX, scaleY == 0 ? 1 : scaleY, scaleZ == 0 ? 1 : scaleZ);
+    }
+
+    public boolean hasSeat() {
+        return !Double.isNaN(seatOffset);
+    }
+}
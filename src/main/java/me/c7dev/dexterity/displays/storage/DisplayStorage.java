@@ -0,0 +1,63 @@
+package me.c7dev.dexterity.displays.storage;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Persists {@link DisplayRecord}s so that the plugin does not depend on the on-disk format of saved displays
+ */
+public interface DisplayStorage {
+
+    /**
+     * Opens the storage and reads its index
+     */
+    void open() throws IOException;
+
+    /**
+     * @return The labels of every stored display
+     */
+    Set<String> getLabels();
+
+    /**
+     * Decodes a stored display
+     *
+     * @param label
+     * @return The record, or null if no display is stored with the label
+     */
+    DisplayRecord load(String label);
+
+    /**
+     * @param label
+     * @return The name of the world the display is in, or null if unknown
+     */
+    String getWorld(String label);
+
+    /**
+     * Gets the chunks containing the display's block entities without decoding the whole display
+     *
+     * @param label
+     * @return The chunk keys, or null if unknown
+     */
+    long[] getChunkKeys(String label);
+
+    /**
+     * Stores or replaces a display. Changes may not be on disk until {@link #flush()}
+     */
+    void save(DisplayRecord record) throws IOException;
+
+    /**
+     * Removes a stored display. Changes may not be on disk until {@link #flush()}
+     */
+    void delete(String label) throws IOException;
+
+    /**
+     * Writes any pending changes to disk
+     */
+    void flush() throws IOException;
+
+    /**
+     * Flushes and releases any resources held by the storage
+     */
+    void close();
+
+}
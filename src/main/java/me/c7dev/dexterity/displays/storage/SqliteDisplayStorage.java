@@ -0,0 +1,382 @@
+package me.c7dev.dexterity.displays.storage;
+
+import me.c7dev.dexterity.util.InteractionCommand;
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stores saved displays in an embedded SQLite database, with indexed tables for block UUIDs, owners and commands
+ * so that displays can be looked up by world, owner or block without loading them.
+ * <p>
+ * Writes are batched into a transaction that is committed on {@link #flush()}.
+ */
+public class SqliteDisplayStorage implements DisplayStorage {
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS displays (label TEXT PRIMARY KEY, world TEXT, parent TEXT, unlisted INTEGER NOT NULL,"
+            + " center_x REAL, center_y REAL, center_z REAL, center_yaw REAL, center_pitch REAL,"
+            + " scale_x REAL, scale_y REAL, scale_z REAL, yaw REAL, pitch REAL, roll REAL, seat_offset REAL,"
+            + " item BLOB, item_schem_name TEXT, chunks BLOB)",
+        "CREATE TABLE IF NOT EXISTS display_blocks (uuid TEXT PRIMARY KEY, label TEXT NOT NULL, idx INTEGER NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS display_owners (label TEXT NOT NULL, owner TEXT NOT NULL, idx INTEGER NOT NULL, PRIMARY KEY (label, owner))",
+        "CREATE TABLE IF NOT EXISTS display_commands (label TEXT NOT NULL, idx INTEGER NOT NULL, cmd TEXT, permission TEXT,"
+            + " left_click INTEGER, right_click INTEGER, by_player INTEGER, PRIMARY KEY (label, idx))",
+        "CREATE INDEX IF NOT EXISTS displays_world ON displays (world)",
+        "CREATE INDEX IF NOT EXISTS display_blocks_label ON display_blocks (label)",
+        "CREATE INDEX IF NOT EXISTS display_owners_owner ON display_owners (owner)"
+    };
+
+    private static final String DISPLAY_COLUMNS = "world, parent, unlisted, center_x, center_y, center_z, center_yaw, center_pitch,"
+        + " scale_x, scale_y, scale_z, yaw, pitch, roll, seat_offset, item, item_schem_name, chunks";
+
+    private final File file;
+    private final ExecutorService queryExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Dexterity Display Queries");
+        t.setDaemon(true);
+        return t;
+    });
+    private Connection connection;
+
+    public SqliteDisplayStorage(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try (Statement st = connection.createStatement()) {
+                st.execute("PRAGMA journal_mode=WAL");
+                st.execute("PRAGMA synchronous=NORMAL");
+                for (String sql : SCHEMA) {
+                    st.execute(sql);
+                }
+            }
+            connection.setAutoCommit(false);
+            connection.commit();
+        } catch (SQLException ex) {
+            throw new IOException("Could not open " + file.getName(), ex);
+        }
+    }
+
+    @Override
+    public synchronized Set<String> getLabels() {
+        Set<String> r = new HashSet<>();
+        try (PreparedStatement st = connection.prepareStatement("SELECT label FROM displays");
+             ResultSet rs = st.executeQuery()) {
+            while (rs.next()) {
+                r.add(rs.getString(1));
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+        return r;
+    }
+
+    @Override
+    public synchronized DisplayRecord load(String label) {
+        try {
+            DisplayRecord r = new DisplayRecord(label);
+            try (PreparedStatement st = connection.prepareStatement("SELECT " + DISPLAY_COLUMNS + " FROM displays WHERE label = ?")) {
+                st.setString(1, label);
+                try (ResultSet rs = st.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    r.world = rs.getString("world");
+                    r.parent = rs.getString("parent");
+                    r.unlisted = rs.getInt("unlisted") != 0;
+                    r.centerX = rs.getDouble("center_x");
+                    r.centerY = rs.getDouble("center_y");
+                    r.centerZ = rs.getDouble("center_z");
+                    r.centerYaw = rs.getFloat("center_yaw");
+                    r.centerPitch = rs.getFloat("center_pitch");
+                    r.scaleX = rs.getDouble("scale_x");
+                    r.scaleY = rs.getDouble("scale_y");
+                    r.scaleZ = rs.getDouble("scale_z");
+                    r.yaw = rs.getFloat("yaw");
+                    r.pitch = rs.getFloat("pitch");
+                    r.roll = rs.getFloat("roll");
+                    r.seatOffset = rs.getDouble("seat_offset");
+                    if (rs.wasNull()) {
+                        r.seatOffset = Double.NaN;
+                    }
+                    byte[] item = rs.getBytes("item");
+                    if (item != null) {
+                        r.item = ItemStack.deserializeBytes(item);
+                    }
+                    r.itemSchemName = rs.getString("item_schem_name");
+                    r.chunks = decodeChunks(rs.getBytes("chunks"));
+                }
+            }
+
+            r.uuids.addAll(queryUUIDs("SELECT uuid FROM display_blocks WHERE label = ? ORDER BY idx", label));
+            r.owners.addAll(queryUUIDs("SELECT owner FROM display_owners WHERE label = ? ORDER BY idx", label));
+
+            try (PreparedStatement st = connection.prepareStatement("SELECT cmd, permission, left_click, right_click, by_player FROM display_commands WHERE label = ? ORDER BY idx")) {
+                st.setString(1, label);
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        InteractionCommand cmd = new InteractionCommand(rs.getString("cmd"));
+                        String perm = rs.getString("permission");
+                        if (perm != null) {
+                            cmd.setPermission(perm);
+                        }
+                        cmd.setLeft(rs.getInt("left_click") != 0);
+                        cmd.setRight(rs.getInt("right_click") != 0);
+                        cmd.setByPlayer(rs.getInt("by_player") != 0);
+                        r.commands.add(cmd);
+                    }
+                }
+            }
+            return r;
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            Bukkit.getLogger().severe("Could not load '" + label + "' display!");
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized String getWorld(String label) {
+        try (PreparedStatement st = connection.prepareStatement("SELECT world FROM displays WHERE label = ?")) {
+            st.setString(1, label);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized long[] getChunkKeys(String label) {
+        try (PreparedStatement st = connection.prepareStatement("SELECT chunks FROM displays WHERE label = ?")) {
+            st.setString(1, label);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() ? decodeChunks(rs.getBytes(1)) : null;
+            }
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void save(DisplayRecord r) throws IOException {
+        try {
+            deleteRows(r.label);
+            try (PreparedStatement st = connection.prepareStatement("INSERT INTO displays (label, " + DISPLAY_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                st.setString(1, r.label);
+                st.setString(2, r.world);
+                st.setString(3, r.parent);
+                st.setInt(4, r.unlisted ? 1 : 0);
+                st.setDouble(5, r.centerX);
+                st.setDouble(6, r.centerY);
+                st.setDouble(7, r.centerZ);
+                st.setFloat(8, r.centerYaw);
+                st.setFloat(9, r.centerPitch);
+                st.setDouble(10, r.scaleX);
+                st.setDouble(11, r.scaleY);
+                st.setDouble(12, r.scaleZ);
+                st.setFloat(13, r.yaw);
+                st.setFloat(14, r.pitch);
+                st.setFloat(15, r.roll);
+                if (r.hasSeat()) {
+                    st.setDouble(16, r.seatOffset);
+                } else {
+                    st.setNull(16, Types.REAL);
+                }
+                st.setBytes(17, r.item == null ? null : r.item.serializeAsBytes());
+                st.setString(18, r.itemSchemName);
+                st.setBytes(19, encodeChunks(r.chunks));
+                st.executeUpdate();
+            }
+
+            insertUUIDs("INSERT OR REPLACE INTO display_blocks (uuid, label, idx) VALUES (?, ?, ?)", r.label, r.uuids, true);
+            insertUUIDs("INSERT OR IGNORE INTO display_owners (label, owner, idx) VALUES (?, ?, ?)", r.label, r.owners, false);
+
+            try (PreparedStatement st = connection.prepareStatement("INSERT INTO display_commands (label, idx, cmd, permission, left_click, right_click, by_player) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < r.commands.size(); i++) {
+                    InteractionCommand cmd = r.commands.get(i);
+                    st.setString(1, r.label);
+                    st.setInt(2, i);
+                    st.setString(3, cmd.getCmd());
+                    st.setString(4, cmd.getPermission());
+                    st.setInt(5, cmd.isLeft() ? 1 : 0);
+                    st.setInt(6, cmd.isRight() ? 1 : 0);
+                    st.setInt(7, cmd.isByPlayer() ? 1 : 0);
+                    st.addBatch();
+                }
+                st.executeBatch();
+            }
+        } catch (SQLException ex) {
+            throw new IOException("Could not save '" + r.label + "' display", ex);
+        }
+    }
+
+    @Override
+    public synchronized void delete(String label) throws IOException {
+        try {
+            deleteRows(label);
+        } catch (SQLException ex) {
+            throw new IOException("Could not delete '" + label + "' display", ex);
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        try {
+            connection.commit();
+        } catch (SQLException ex) {
+            throw new IOException("Could not commit saved displays", ex);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        queryExecutor.shutdown();
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.commit();
+            connection.close();
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+        connection = null;
+    }
+
+    /**
+     * Asynchronously finds the labels of every stored display centered in a world, including displays that are not loaded
+     *
+     * @param world The world name
+     * @return The labels
+     */
+    public CompletableFuture<Set<String>> queryLabelsInWorld(String world) {
+        return queryLabels("SELECT label FROM displays WHERE world = ?", world);
+    }
+
+    /**
+     * Asynchronously finds the labels of every stored display that the player is an owner of
+     *
+     * @param owner The owner's UUID
+     * @return The labels
+     */
+    public CompletableFuture<Set<String>> queryLabelsByOwner(UUID owner) {
+        return queryLabels("SELECT label FROM display_owners WHERE owner = ?", owner.toString());
+    }
+
+    /**
+     * Asynchronously finds the label of the stored display that a block display entity belongs to
+     *
+     * @param block The block display entity's UUID
+     * @return The label, or null if the entity is not part of a saved display
+     */
+    public CompletableFuture<String> queryLabelByBlock(UUID block) {
+        return queryLabels("SELECT label FROM display_blocks WHERE uuid = ?", block.toString())
+            .thenApply(labels -> labels.isEmpty() ? null : labels.iterator().next());
+    }
+
+    private CompletableFuture<Set<String>> queryLabels(String sql, String param) {
+        return CompletableFuture.supplyAsync(() -> {
+            synchronized (this) {
+                Set<String> r = new HashSet<>();
+                try (PreparedStatement st = connection.prepareStatement(sql)) {
+                    st.setString(1, param);
+                    try (ResultSet rs = st.executeQuery()) {
+                        while (rs.next()) {
+                            r.add(rs.getString(1));
+                        }
+                    }
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                return r;
+            }
+        }, queryExecutor);
+    }
+
+    private void deleteRows(String label) throws SQLException {
+        for (String table : new String[]{"displays", "display_blocks", "display_owners", "display_commands"}) {
+            try (PreparedStatement st = connection.prepareStatement("DELETE FROM " + table + " WHERE label = ?")) {
+                st.setString(1, label);
+                st.executeUpdate();
+            }
+        }
+    }
+
+    private List<UUID> queryUUIDs(String sql, String label) throws SQLException {
+        List<UUID> r = new ArrayList<>();
+        try (PreparedStatement st = connection.prepareStatement(sql)) {
+            st.setString(1, label);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    r.add(UUID.fromString(rs.getString(1)));
+                }
+            }
+        }
+        return r;
+    }
+
+    private void insertUUIDs(String sql, String label, List<UUID> uuids, boolean uuidFirst) throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement(sql)) {
+            for (int i = 0; i < uuids.size(); i++) {
+                st.setString(uuidFirst ? 1 : 2, uuids.get(i).toString());
+                st.setString(uuidFirst ? 2 : 1, label);
+                st.setInt(3, i);
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+    }
+
+    private static byte[] encodeChunks(long[] chunks) {
+        if (chunks == null) {
+            return null;
+        }
+        ByteBuffer b = ByteBuffer.allocate(chunks.length * 8);
+        for (long key : chunks) {
+            b.putLong(key);
+        }
+        return b.array();
+    }
+
+    private static long[] decodeChunks(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        ByteBuffer b = ByteBuffer.wrap(data);
+        long[] chunks = new long[data.length / 8];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = b.getLong();
+        }
+        return chunks;
+    }
+
+}
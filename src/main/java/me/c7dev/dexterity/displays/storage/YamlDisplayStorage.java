@@ -0,0 +1,257 @@
+package me.c7dev.dexterity.displays.storage;
+
+import me.c7dev.dexterity.util.InteractionCommand;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Legacy storage format, one YAML file per display label
+ */
+public class YamlDisplayStorage implements DisplayStorage {
+
+    private final File folder;
+    private final ConcurrentHashMap<String, DisplayRecord> parsed = new ConcurrentHashMap<>(); //read by getWorld or getChunkKeys, waiting for load
+
+    public YamlDisplayStorage(File folder) {
+        this.folder = folder;
+    }
+
+    public File getFile(String label) {
+        return new File(folder, label + ".yml");
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder.getAbsolutePath());
+        }
+    }
+
+    @Override
+    public Set<String> getLabels() {
+        Set<String> r = new HashSet<>();
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return r;
+        }
+        for (File f : files) {
+            if (f.getName().endsWith(".yml")) {
+                r.add(f.getName().replaceAll("\\.yml", ""));
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public DisplayRecord load(String label) {
+        DisplayRecord r = parsed.remove(label);
+        return r == null ? parse(label) : r;
+    }
+
+    /**
+     * Parses the file once for the metadata lookups and the load that follows them
+     */
+    private DisplayRecord getParsed(String label) {
+        DisplayRecord r = parsed.get(label);
+        if (r == null) {
+            synchronized (parsed) { //do not cache a parse that a concurrent save has made stale
+                r = parse(label);
+                if (r != null) {
+                    parsed.put(label, r);
+                }
+            }
+        }
+        return r;
+    }
+
+    private DisplayRecord parse(String label) {
+        File f = getFile(label);
+        if (!f.exists()) {
+            return null;
+        }
+        FileConfiguration afile = YamlConfiguration.loadConfiguration(f);
+        DisplayRecord r = new DisplayRecord(label);
+
+        r.world = afile.getString("center.world");
+        r.centerX = afile.getDouble("center.x");
+        r.centerY = afile.getDouble("center.y");
+        r.centerZ = afile.getDouble("center.z");
+        r.centerYaw = (float) afile.getDouble("center.yaw");
+        r.centerPitch = (float) afile.getDouble("center.pitch");
+        r.scaleX = afile.getDouble("scale-x", 1);
+        r.scaleY = afile.getDouble("scale-y", 1);
+        r.scaleZ = afile.getDouble("scale-z", 1);
+        r.yaw = (float) afile.getDouble("yaw");
+        r.pitch = (float) afile.getDouble("pitch");
+        r.roll = (float) afile.getDouble("roll");
+        r.seatOffset = afile.getDouble("seat-offset", Double.NaN);
+
+        ConfigurationSection cmdSection = afile.getConfigurationSection("commands");
+        if (cmdSection != null) {
+            for (String key : cmdSection.getKeys(false)) {
+                r.commands.add(new InteractionCommand(afile.getConfigurationSection("commands." + key)));
+            }
+        }
+
+        r.itemSchemName = afile.getString("item-schem-name");
+        if (r.itemSchemName != null) {
+            r.item = afile.getItemStack("item");
+        }
+        r.unlisted = afile.getBoolean("unlisted", false);
+
+        for (String u : afile.getStringList("owners")) {
+            r.owners.add(UUID.fromString(u));
+        }
+        for (String u : afile.getStringList("uuids")) {
+            r.uuids.add(UUID.fromString(u));
+        }
+        r.parent = afile.getString("parent");
+        if (afile.contains("chunks")) {
+            List<Long> chunks = afile.getLongList("chunks");
+            r.chunks = new long[chunks.size()];
+            for (int i = 0; i < r.chunks.length; i++) {
+                r.chunks[i] = chunks.get(i);
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public String getWorld(String label) {
+        DisplayRecord r = getParsed(label);
+        return r == null ? null : r.world;
+    }
+
+    @Override
+    public long[] getChunkKeys(String label) {
+        DisplayRecord r = getParsed(label);
+        return r == null ? null : r.chunks;
+    }
+
+    @Override
+    public void save(DisplayRecord r) throws IOException {
+        File f = getFile(r.label);
+        FileConfiguration afile = new YamlConfiguration();
+
+        //basic metadata
+        Map<String, Object> center = new HashMap<>();
+        center.put("world", r.world);
+        center.put("x", r.centerX);
+        center.put("y", r.centerY);
+        center.put("z", r.centerZ);
+        center.put("yaw", r.centerYaw);
+        center.put("pitch", r.centerPitch);
+        afile.set("center", center);
+        if (r.scaleX != 1) {
+            afile.set("scale-x", r.scaleX);
+        }
+        if (r.scaleY != 1) {
+            afile.set("scale-y", r.scaleY);
+        }
+        if (r.scaleZ != 1) {
+            afile.set("scale-z", r.scaleZ);
+        }
+        if (r.hasSeat()) {
+            afile.set("seat-offset", r.seatOffset);
+        }
+
+        //owners list
+        if (r.owners.size() > 0) {
+            List<String> owners = new ArrayList<>();
+            for (UUID u : r.owners) {
+                owners.add(u.toString());
+            }
+            afile.set("owners", owners);
+        }
+
+        if (r.yaw != 0) {
+            afile.set("yaw", r.yaw);
+        }
+        if (r.pitch != 0) {
+            afile.set("pitch", r.pitch);
+        }
+        if (r.roll != 0) {
+            afile.set("roll", r.roll);
+        }
+
+        //click commands
+        for (int i = 0; i < r.commands.size(); i++) {
+            afile.set("commands.cmd-" + (i + 1), r.commands.get(i).serialize());
+        }
+
+        //drop item
+        if (r.item != null) {
+            afile.set("item-schem-name", r.itemSchemName);
+            afile.set("item", r.item);
+        }
+        if (r.unlisted) {
+            afile.set("unlisted", true);
+        }
+
+        List<String> uuids = new ArrayList<>();
+        for (UUID u : r.uuids) {
+            uuids.add(u.toString());
+        }
+        afile.set("uuids", uuids);
+
+        if (r.parent != null) {
+            afile.set("parent", r.parent);
+        }
+        if (r.chunks != null) {
+            List<Long> chunks = new ArrayList<>();
+            for (long key : r.chunks) {
+                chunks.add(key);
+            }
+            afile.set("chunks", chunks);
+        }
+
+        synchronized (parsed) {
+            parsed.remove(r.label);
+            //write to a temp file first so a crash mid-write cannot truncate the display
+            File temp = new File(folder, r.label + ".yml.tmp");
+            afile.save(temp);
+            try {
+                Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    @Override
+    public void delete(String label) {
+        synchronized (parsed) {
+            parsed.remove(label);
+            File f = getFile(label);
+            if (f.exists()) {
+                f.delete();
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        //every save is written immediately
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+}
@@ -6,6 +6,8 @@ import me.c7dev.dexterity.util.Mask;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.UUID;
@@ -35,11 +37,11 @@ public class BlockTransaction implements Transaction {
         this.disp = disp;
         oldCenter = disp.getCenter();
         if (mask == null) {
-            for (DexBlock db : disp.getBlocks()) {
+            for (DexBlock db : disp.getBlocksView()) {
                 trans.put(db.getEntity().getUniqueId(), new BlockTransactionLine(db));
             }
         } else {
-            for (DexBlock db : disp.getBlocks()) {
+            for (DexBlock db : disp.getBlocksView()) {
                 if (mask.isAllowed(db.getEntity().getBlock().getMaterial())) {
                     trans.put(db.getEntity().getUniqueId(), new BlockTransactionLine(db));
                 }
@@ -65,10 +67,18 @@ public class BlockTransaction implements Transaction {
     }
 
     public void commit(DexBlock[] blocks) {
+        commit(Arrays.asList(blocks));
+    }
+
+    public void commit(Collection<DexBlock> blocks) {
         commit(blocks, null, false);
     }
 
     public void commit(DexBlock[] blocks, Mask mask, boolean include_removed_blocks) {
+        commit(Arrays.asList(blocks), mask, include_removed_blocks);
+    }
+
+    public void commit(Collection<DexBlock> blocks, Mask mask, boolean include_removed_blocks) {
         if (isCommitted) {
             return;
         }
@@ -24,7 +24,7 @@ public class RemoveTransaction implements Transaction {
         disp = d;
         label = d.getLabel();
         owners = d.getOwners();
-        for (DexBlock db : d.getBlocks()) {
+        for (DexBlock db : d.getBlocksView()) {
             states.add(db.getState());
         }
     }
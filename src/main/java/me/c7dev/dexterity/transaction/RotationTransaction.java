@@ -5,6 +5,8 @@ import me.c7dev.dexterity.displays.DexterityDisplay;
 import me.c7dev.dexterity.util.DexBlock;
 import org.bukkit.util.Vector;
 
+import java.util.Collection;
+
 public class RotationTransaction extends BlockTransaction {
 
     private Vector x1 = null, y1 = null, z1 = null, x2 = null, y2 = null, z2 = null;
@@ -20,7 +22,7 @@ public class RotationTransaction extends BlockTransaction {
     }
 
     public void commit() {
-        commit(disp.getBlocks());
+        commit(disp.getBlocksView());
     }
 
     @Override
@@ -34,7 +36,7 @@ public class RotationTransaction extends BlockTransaction {
     }
 
     @Override
-    public void commit(DexBlock[] blocks) {
+    public void commit(Collection<DexBlock> blocks) {
         super.commit(blocks);
         DexRotation r = disp.getRotationManager();
         x2 = r.getXAxis();
@@ -4,6 +4,8 @@ import me.c7dev.dexterity.displays.DexterityDisplay;
 import me.c7dev.dexterity.util.DexBlock;
 import org.bukkit.util.Vector;
 
+import java.util.Collection;
+
 public class ScaleTransaction extends BlockTransaction {
 
     private Vector s1 = null, s2 = null;
@@ -16,7 +18,7 @@ public class ScaleTransaction extends BlockTransaction {
     }
 
     public void commit() {
-        commit(disp.getBlocks());
+        commit(disp.getBlocksView());
     }
 
     public void commitEmpty() { //reset scale
@@ -26,7 +28,7 @@ public class ScaleTransaction extends BlockTransaction {
     }
 
     @Override
-    public void commit(DexBlock[] blocks) {
+    public void commit(Collection<DexBlock> blocks) {
         super.commit(blocks);
         s2 = disp.getScale();
     }
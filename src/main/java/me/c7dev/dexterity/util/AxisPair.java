@@ -35,6 +35,11 @@ public class AxisPair {
         q.transformInverse(dir2);
     }
 
+    public AxisPair(AxisPair src) {
+        dir1 = new Vector3d(src.dir1);
+        dir2 = new Vector3d(src.dir2);
+    }
+
     public AxisPair(Vector x, Vector z) {
         if (!DexUtils.isOrthonormal(x, z)) {
             throw new IllegalArgumentException("Axes must be orthonormal!");
@@ -0,0 +1,240 @@
+package me.c7dev.dexterity.util;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.BlockDisplay;
+import org.bukkit.entity.Entity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-world index of every loaded {@link BlockDisplay}, managed by Dexterity or not, bucketed by chunk and then by
+ * 4x4x4 block cells within the chunk. Region queries only read the cells that they overlap, rather than copying every
+ * entity in the chunks.
+ * <p>
+ * Kept up to date by entity spawn and removal, chunk entity loading, and moves of managed blocks. Block displays moved by
+ * other plugins are put in the right cell when a query finds them in the wrong one.
+ */
+public class BlockDisplayChunkIndex {
+
+    private final HashMap<World, HashMap<Long, ChunkBucket>> buckets = new HashMap<>();
+    private final HashMap<UUID, Entry> entries = new HashMap<>();
+
+    private static class Entry {
+        final World world;
+        final long chunk;
+        final int cell;
+
+        Entry(World world, long chunk, int cell) {
+            this.world = world;
+            this.chunk = chunk;
+            this.cell = cell;
+        }
+    }
+
+    private static class ChunkBucket {
+        final HashMap<Integer, HashMap<UUID, BlockDisplay>> cells = new HashMap<>();
+    }
+
+    /**
+     * @return The key of the chunk containing the x and z coordinates
+     */
+    public static long chunkKey(double x, double z) {
+        return Chunk.getChunkKey((int) Math.floor(x) >> 4, (int) Math.floor(z) >> 4);
+    }
+
+    /**
+     * @return The key of the 4x4x4 cell containing the coordinates, unique within a chunk
+     */
+    public static int cellKey(double x, double y, double z) {
+        return (((int) Math.floor(y) >> 2) << 4) | ((((int) Math.floor(x) >> 2) & 3) << 2) | (((int) Math.floor(z) >> 2) & 3);
+    }
+
+    /**
+     * Inserts the block display, or moves it to the cell it is currently in
+     *
+     * @param bd
+     */
+    public void update(BlockDisplay bd) {
+        Location loc = bd.getLocation();
+        World world = loc.getWorld();
+        long key = chunkKey(loc.getX(), loc.getZ());
+        int cell = cellKey(loc.getX(), loc.getY(), loc.getZ());
+        UUID u = bd.getUniqueId();
+        Entry entry = entries.get(u);
+        if (entry != null) {
+            if (entry.world == world && entry.chunk == key && entry.cell == cell) {
+                return;
+            }
+            removeFromBucket(u, entry);
+        }
+        entries.put(u, new Entry(world, key, cell));
+        buckets.computeIfAbsent(world, w -> new HashMap<>()).computeIfAbsent(key, k -> new ChunkBucket())
+            .cells.computeIfAbsent(cell, k -> new HashMap<>()).put(u, bd);
+    }
+
+    /**
+     * Inserts every block display in a collection of entities, such as those of a chunk that loaded
+     *
+     * @param entities
+     */
+    public void updateAll(Collection<? extends Entity> entities) {
+        for (Entity e : entities) {
+            if (e instanceof BlockDisplay bd && !bd.isDead()) {
+                update(bd);
+            }
+        }
+    }
+
+    public void remove(Entity e) {
+        remove(e.getUniqueId());
+    }
+
+    public void remove(UUID u) {
+        Entry entry = entries.remove(u);
+        if (entry != null) {
+            removeFromBucket(u, entry);
+        }
+    }
+
+    private void removeFromBucket(UUID u, Entry entry) {
+        HashMap<Long, ChunkBucket> worldBuckets = buckets.get(entry.world);
+        if (worldBuckets == null) {
+            return;
+        }
+        ChunkBucket bucket = worldBuckets.get(entry.chunk);
+        if (bucket == null) {
+            return;
+        }
+        HashMap<UUID, BlockDisplay> cell = bucket.cells.get(entry.cell);
+        if (cell != null && cell.remove(u) != null && cell.isEmpty()) {
+            bucket.cells.remove(entry.cell);
+            if (bucket.cells.isEmpty()) {
+                worldBuckets.remove(entry.chunk);
+                if (worldBuckets.isEmpty()) {
+                    buckets.remove(entry.world);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        buckets.clear();
+        entries.clear();
+    }
+
+    /**
+     * Gets the block displays in every chunk that overlaps the area. Callers still need to check each location against
+     * the exact area.
+     *
+     * @param world
+     * @param minX
+     * @param minZ
+     * @param maxX
+     * @param maxZ
+     * @return New list of the block displays, all of which are valid and in the world
+     */
+    public List<BlockDisplay> getInArea(World world, double minX, double minZ, double maxX, double maxZ) {
+        return getInBox(world, minX, Double.NEGATIVE_INFINITY, minZ, maxX, Double.POSITIVE_INFINITY, maxZ);
+    }
+
+    /**
+     * Gets the block displays in every 4x4x4 cell that overlaps the box. Callers still need to check each location
+     * against the exact box.
+     *
+     * @return New list of the block displays, all of which are valid and in the world
+     */
+    public List<BlockDisplay> getInBox(World world, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        List<BlockDisplay> r = new ArrayList<>();
+        HashMap<Long, ChunkBucket> worldBuckets = buckets.get(world);
+        if (worldBuckets == null) {
+            return r;
+        }
+        int gx1 = (int) Math.floor(minX) >> 2, gy1 = (int) Math.floor(minY) >> 2, gz1 = (int) Math.floor(minZ) >> 2,
+            gx2 = (int) Math.floor(maxX) >> 2, gy2 = (int) Math.floor(maxY) >> 2, gz2 = (int) Math.floor(maxZ) >> 2;
+        int cx1 = gx1 >> 2, cz1 = gz1 >> 2, cx2 = gx2 >> 2, cz2 = gz2 >> 2;
+
+        List<BlockDisplay> stale = new ArrayList<>();
+        if ((long) (cx2 - cx1 + 1) * (cz2 - cz1 + 1) > worldBuckets.size()) { //fewer occupied chunks than chunks in the box
+            for (Map.Entry<Long, ChunkBucket> bucket : worldBuckets.entrySet()) {
+                long key = bucket.getKey();
+                int cx = (int) key, cz = (int) (key >> 32);
+                if (cx >= cx1 && cx <= cx2 && cz >= cz1 && cz <= cz2) {
+                    collectCells(bucket.getValue(), key, cx, cz, gx1, gy1, gz1, gx2, gy2, gz2, world, r, stale);
+                }
+            }
+        } else {
+            for (int cx = cx1; cx <= cx2; cx++) {
+                for (int cz = cz1; cz <= cz2; cz++) {
+                    long key = Chunk.getChunkKey(cx, cz);
+                    ChunkBucket bucket = worldBuckets.get(key);
+                    if (bucket != null) {
+                        collectCells(bucket, key, cx, cz, gx1, gy1, gz1, gx2, gy2, gz2, world, r, stale);
+                    }
+                }
+            }
+        }
+
+        for (BlockDisplay bd : stale) {
+            if (bd.isDead()) {
+                remove(bd);
+            } else {
+                update(bd);
+            }
+        }
+        return r;
+    }
+
+    private void collectCells(ChunkBucket bucket, long key, int cx, int cz, int gx1, int gy1, int gz1, int gx2, int gy2, int gz2,
+                              World world, List<BlockDisplay> r, List<BlockDisplay> stale) {
+        //cell coordinates of the box, clipped to this chunk
+        int lx1 = Math.max(gx1, cx << 2) & 3, lx2 = Math.min(gx2, (cx << 2) + 3) & 3,
+            lz1 = Math.max(gz1, cz << 2) & 3, lz2 = Math.min(gz2, (cz << 2) + 3) & 3;
+
+        if ((long) (lx2 - lx1 + 1) * (lz2 - lz1 + 1) * ((long) gy2 - gy1 + 1) > bucket.cells.size()) {
+            for (Map.Entry<Integer, HashMap<UUID, BlockDisplay>> cell : bucket.cells.entrySet()) {
+                int c = cell.getKey(), cy = c >> 4, lx = (c >> 2) & 3, lz = c & 3;
+                if (cy >= gy1 && cy <= gy2 && lx >= lx1 && lx <= lx2 && lz >= lz1 && lz <= lz2) {
+                    collect(cell.getValue().values(), key, c, world, r, stale);
+                }
+            }
+        } else {
+            for (int cy = gy1; cy <= gy2; cy++) {
+                for (int lx = lx1; lx <= lx2; lx++) {
+                    for (int lz = lz1; lz <= lz2; lz++) {
+                        int c = (cy << 4) | (lx << 2) | lz;
+                        HashMap<UUID, BlockDisplay> cell = bucket.cells.get(c);
+                        if (cell != null) {
+                            collect(cell.values(), key, c, world, r, stale);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void collect(Collection<BlockDisplay> cell, long key, int cellKey, World world, List<BlockDisplay> r, List<BlockDisplay> stale) {
+        for (BlockDisplay bd : cell) {
+            if (bd.isDead() || bd.getWorld() != world) {
+                stale.add(bd);
+                continue;
+            }
+            double x = bd.getX(), y = bd.getY(), z = bd.getZ();
+            if (chunkKey(x, z) != key || cellKey(x, y, z) != cellKey) {
+                stale.add(bd);
+            }
+            r.add(bd);
+        }
+    }
+
+}
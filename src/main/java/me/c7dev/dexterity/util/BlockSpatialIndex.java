@@ -0,0 +1,293 @@
+package me.c7dev.dexterity.util;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Per-world loose octree of the bounding spheres of managed {@link DexBlock}s, used to find the blocks a ray may hit
+ * without testing every nearby entity.
+ * <p>
+ * The world is split into cubic regions that each have their own octree. A block is stored in the deepest node whose
+ * loose bounds (twice the node's size) fully contain its bounding sphere, so a moved block only needs to be re-inserted
+ * once it leaves those bounds.
+ */
+public class BlockSpatialIndex {
+
+    private static final double ROOT_SIZE = 64, MIN_HALF_SIZE = 0.5;
+
+    private final HashMap<World, HashMap<Long, Node>> roots = new HashMap<>();
+    private final IdentityHashMap<DexBlock, Entry> entries = new IdentityHashMap<>();
+    private final HashMap<World, long[]> modCounts = new HashMap<>();
+
+    /**
+     * Inserts the block, or moves it to match its current location and scale
+     *
+     * @param db
+     */
+    public void update(DexBlock db) {
+        Location loc = db.getLocation();
+        World world = loc.getWorld();
+        Vector scale = db.getTransformation().getScale();
+        double x = loc.getX(), y = loc.getY(), z = loc.getZ();
+        double r = 0.5 * Math.sqrt(scale.getX() * scale.getX() + scale.getY() * scale.getY() + scale.getZ() * scale.getZ());
+
+        modified(world);
+        Entry entry = entries.get(db);
+        if (entry != null) {
+            if (entry.world == world && entry.node.looselyContains(x, y, z, r)) {
+                entry.set(x, y, z, r);
+                return;
+            }
+            if (entry.world != world) {
+                modified(entry.world);
+            }
+            entry.node.remove(entry);
+        } else {
+            entry = new Entry(db);
+            entries.put(db, entry);
+        }
+        entry.world = world;
+        entry.set(x, y, z, r);
+
+        long key = regionKey(Math.floor(x / ROOT_SIZE), Math.floor(y / ROOT_SIZE), Math.floor(z / ROOT_SIZE));
+        Node root = roots.computeIfAbsent(world, w -> new HashMap<>()).get(key);
+        if (root == null) {
+            double half = ROOT_SIZE / 2;
+            root = new Node(null, Math.floor(x / ROOT_SIZE) * ROOT_SIZE + half, Math.floor(y / ROOT_SIZE) * ROOT_SIZE + half,
+                Math.floor(z / ROOT_SIZE) * ROOT_SIZE + half, half, key);
+            roots.get(world).put(key, root);
+        }
+        root.insert(entry);
+    }
+
+    /**
+     * Moves the block to match its current location and scale if it is in the index
+     *
+     * @param db
+     */
+    public void move(DexBlock db) {
+        if (entries.containsKey(db)) {
+            update(db);
+        }
+    }
+
+    /**
+     * Removes the block from the index
+     *
+     * @param db
+     */
+    public void remove(DexBlock db) {
+        Entry entry = entries.remove(db);
+        if (entry != null) {
+            modified(entry.world);
+            entry.node.remove(entry);
+        }
+    }
+
+    /**
+     * Gets a counter that changes whenever a block in the world is added, moved, or removed
+     *
+     * @param world
+     * @return The modification count
+     */
+    public long getModCount(World world) {
+        long[] count = modCounts.get(world);
+        return count == null ? 0 : count[0];
+    }
+
+    private void modified(World world) {
+        modCounts.computeIfAbsent(world, w -> new long[1])[0]++;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        roots.clear();
+        entries.clear();
+        for (long[] count : modCounts.values()) {
+            count[0]++;
+        }
+    }
+
+    /**
+     * Finds every block whose bounding sphere is intersected by the ray segment
+     *
+     * @param world
+     * @param origin  Start of the ray
+     * @param dir     Normalized direction of the ray
+     * @param maxDist Length of the ray segment
+     * @return The candidate blocks, in no particular order
+     */
+    public List<DexBlock> raycast(World world, Vector origin, Vector dir, double maxDist) {
+        List<DexBlock> r = new ArrayList<>();
+        HashMap<Long, Node> worldRoots = roots.get(world);
+        if (worldRoots == null) {
+            return r;
+        }
+
+        double ox = origin.getX(), oy = origin.getY(), oz = origin.getZ(), dx = dir.getX(), dy = dir.getY(), dz = dir.getZ();
+        double ex = ox + dx * maxDist, ey = oy + dy * maxDist, ez = oz + dz * maxDist;
+        double margin = ROOT_SIZE / 2; //loose bounds of a root extend past its region
+        int minX = (int) Math.floor((Math.min(ox, ex) - margin) / ROOT_SIZE), maxX = (int) Math.floor((Math.max(ox, ex) + margin) / ROOT_SIZE),
+            minY = (int) Math.floor((Math.min(oy, ey) - margin) / ROOT_SIZE), maxY = (int) Math.floor((Math.max(oy, ey) + margin) / ROOT_SIZE),
+            minZ = (int) Math.floor((Math.min(oz, ez) - margin) / ROOT_SIZE), maxZ = (int) Math.floor((Math.max(oz, ez) + margin) / ROOT_SIZE);
+
+        double ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    Node root = worldRoots.get(regionKey(x, y, z));
+                    if (root != null) {
+                        root.raycast(ox, oy, oz, dx, dy, dz, ix, iy, iz, maxDist, r);
+                    }
+                }
+            }
+        }
+        return r;
+    }
+
+    private static long regionKey(double x, double y, double z) {
+        return (((long) x & 0x1FFFFF) << 42) | (((long) y & 0x1FFFFF) << 21) | ((long) z & 0x1FFFFF);
+    }
+
+    private static class Entry {
+        final DexBlock block;
+        World world;
+        Node node;
+        double x, y, z, r;
+
+        Entry(DexBlock block) {
+            this.block = block;
+        }
+
+        void set(double x, double y, double z, double r) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.r = r;
+        }
+
+        boolean intersectsRay(double ox, double oy, double oz, double dx, double dy, double dz, double maxDist) {
+            double wx = x - ox, wy = y - oy, wz = z - oz;
+            double t = wx * dx + wy * dy + wz * dz;
+            if (t < -r || t > maxDist + r) {
+                return false;
+            }
+            return (wx * wx + wy * wy + wz * wz) - (t * t) <= r * r;
+        }
+    }
+
+    private class Node {
+        final Node parent;
+        final double cx, cy, cz, half;
+        final long regionKey;
+        final Set<Entry> items = new HashSet<>();
+        Node[] children;
+        int count = 0; //entries in this node and all descendants
+
+        Node(Node parent, double cx, double cy, double cz, double half, long regionKey) {
+            this.parent = parent;
+            this.cx = cx;
+            this.cy = cy;
+            this.cz = cz;
+            this.half = half;
+            this.regionKey = regionKey;
+        }
+
+        boolean looselyContains(double x, double y, double z, double r) {
+            double loose = 2 * half - r;
+            return Math.abs(x - cx) <= loose && Math.abs(y - cy) <= loose && Math.abs(z - cz) <= loose;
+        }
+
+        void insert(Entry e) {
+            count++;
+            double childHalf = half / 2;
+            if (childHalf >= MIN_HALF_SIZE && e.r <= childHalf) {
+                int i = (e.x >= cx ? 1 : 0) | (e.y >= cy ? 2 : 0) | (e.z >= cz ? 4 : 0);
+                if (children == null) {
+                    children = new Node[8];
+                }
+                Node child = children[i];
+                if (child == null) {
+                    child = new Node(this, cx + ((i & 1) != 0 ? childHalf : -childHalf), cy + ((i & 2) != 0 ? childHalf : -childHalf),
+                        cz + ((i & 4) != 0 ? childHalf : -childHalf), childHalf, regionKey);
+                    children[i] = child;
+                }
+                child.insert(e);
+                return;
+            }
+            items.add(e);
+            e.node = this;
+        }
+
+        void remove(Entry e) {
+            items.remove(e);
+            e.node = null;
+            Node n = this;
+            while (n != null) {
+                n.count--;
+                if (n.count == 0) { //prune empty branches
+                    if (n.parent == null) {
+                        HashMap<Long, Node> worldRoots = roots.get(e.world);
+                        if (worldRoots != null) {
+                            worldRoots.remove(n.regionKey);
+                            if (worldRoots.isEmpty()) {
+                                roots.remove(e.world);
+                            }
+                        }
+                    } else {
+                        Node[] siblings = n.parent.children;
+                        for (int i = 0; i < siblings.length; i++) {
+                            if (siblings[i] == n) {
+                                siblings[i] = null;
+                            }
+                        }
+                    }
+                }
+                n = n.parent;
+            }
+        }
+
+        void raycast(double ox, double oy, double oz, double dx, double dy, double dz, double ix, double iy, double iz, double maxDist, List<DexBlock> r) {
+            //slab test against the loose bounds
+            double loose = 2 * half;
+            double t1 = (cx - loose - ox) * ix, t2 = (cx + loose - ox) * ix;
+            double tmin = Math.min(t1, t2), tmax = Math.max(t1, t2);
+            t1 = (cy - loose - oy) * iy;
+            t2 = (cy + loose - oy) * iy;
+            tmin = Math.max(tmin, Math.min(t1, t2));
+            tmax = Math.min(tmax, Math.max(t1, t2));
+            t1 = (cz - loose - oz) * iz;
+            t2 = (cz + loose - oz) * iz;
+            tmin = Math.max(tmin, Math.min(t1, t2));
+            tmax = Math.min(tmax, Math.max(t1, t2));
+            if (tmax < Math.max(tmin, 0) || tmin > maxDist) {
+                return;
+            }
+
+            for (Entry e : items) {
+                if (e.intersectsRay(ox, oy, oz, dx, dy, dz, maxDist)) {
+                    r.add(e.block);
+                }
+            }
+            if (children != null) {
+                for (Node child : children) {
+                    if (child != null) {
+                        child.raycast(ox, oy, oz, dx, dy, dz, ix, iy, iz, maxDist, r);
+                    }
+                }
+            }
+        }
+    }
+
+}
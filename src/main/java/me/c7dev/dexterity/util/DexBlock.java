@@ -5,6 +5,7 @@ import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.entity.BlockDisplay;
+import org.bukkit.util.Transformation;
 import org.bukkit.util.Vector;
 import org.joml.Quaterniond;
 import org.joml.Quaternionf;
@@ -182,9 +183,7 @@ public class DexBlock {
         rot.rotateY(-Math.toRadians(entity.getLocation().getYaw()));
         rot.rotateX(Math.toRadians(entity.getLocation().getPitch()));
 
-        Location visibleCenter = entity.getLocation()
-            .add(DexUtils.vector(rot.transform(entity.getTransformation().getTranslation())))
-            .add(DexUtils.vector(rot.transform(q.transform(entity.getTransformation().getScale().mul(0.5f)))));
+        Location visibleCenter = getVisibleLocation();
         AxisPair ap = new AxisPair();
 
         rot.mul(DexUtils.quaternion(q));
@@ -206,6 +205,27 @@ public class DexBlock {
         entity.setTransformation(trans.build());
         entity.setRotation((float) pyr.getY(), (float) pyr.getX());
         entity.setInterpolationDelay(TELEPORT_DURATION);
+        updateIndex();
+    }
+
+    /**
+     * Gets the center of the block as it is rendered from the entity's transformation. This is the same as
+     * {@link #getLocation()} unless the transformation does not follow Dexterity convention, such as after an
+     * interpolated rotation.
+     *
+     * @return The location that {@link #loadTransformationAndRoll()} would move the entity to
+     */
+    public Location getVisibleLocation() {
+        Transformation t = entity.getTransformation();
+        Quaternionf q = t.getLeftRotation().mul(t.getRightRotation());
+
+        Quaterniond rot = new Quaterniond();
+        rot.rotateY(-Math.toRadians(entity.getLocation().getYaw()));
+        rot.rotateX(Math.toRadians(entity.getLocation().getPitch()));
+
+        return entity.getLocation()
+            .add(DexUtils.vector(rot.transform(t.getTranslation())))
+            .add(DexUtils.vector(rot.transform(q.transform(t.getScale().mul(0.5f)))));
     }
 
     public BlockDisplay getEntity() {
@@ -278,6 +298,7 @@ public class DexBlock {
     public void setTransformation(DexTransformation dt) {
         trans = dt;
         entity.setTransformation(dt.build());
+        updateIndex();
     }
 
     public DexBlockState getState() {
@@ -298,6 +319,7 @@ public class DexBlock {
         entity.teleport(state.getLocation());
         entity.setTransformation(state.getTransformation().build());
         entity.setBlock(state.getBlock());
+        updateIndex();
     }
 
     /**
@@ -306,10 +328,12 @@ public class DexBlock {
     public void updateTransformation() {
 
         entity.setTransformation(trans.build());
+        updateIndex();
     }
 
     public void teleport(Location loc) {
         entity.teleport(loc);
+        updateIndex();
     }
 
     /**
@@ -319,6 +343,7 @@ public class DexBlock {
      */
     public void move(Vector v) {
         entity.teleport(entity.getLocation().add(v));
+        updateIndex();
     }
 
     /**
@@ -330,6 +355,14 @@ public class DexBlock {
      */
     public void move(double x, double y, double z) {
         entity.teleport(entity.getLocation().add(x, y, z));
+        updateIndex();
+    }
+
+    private void updateIndex() {
+        if (disp != null) {
+            disp.getPlugin().getBlockIndex().move(this);
+            disp.getPlugin().getDisplayIndex().update(entity);
+        }
     }
 
 //	public void setBrightness(int blockLight, int skyLight) {
@@ -343,7 +376,7 @@ public class DexBlock {
         disp.removeBlock(this);
         disp.getPlugin().clearMappedDisplay(this);
         entity.remove();
-        if (disp.getBlocks().length == 0 && disp.getSubdisplayCount() == 0) {
+        if (disp.getBlocksCount() == 0 && disp.getSubdisplayCount() == 0) {
             disp.remove(false);
         }
     }
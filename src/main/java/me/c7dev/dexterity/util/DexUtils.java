@@ -6,9 +6,12 @@ import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.Bisected;
 import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.Directional;
+import org.bukkit.block.data.type.Slab;
 import org.bukkit.block.data.type.Snow;
+import org.bukkit.block.data.type.TrapDoor;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
@@ -342,6 +345,23 @@ public class DexUtils {
         };
     }
 
+    /**
+     * Gets the height of the bottom of the block's shape above the bottom of its block space, for blocks placed in the upper half
+     *
+     * @param b
+     * @return The offset in blocks, 0 for blocks resting on the bottom
+     * @see #getBlockDimensions(BlockData)
+     */
+    public static double getBlockMinY(BlockData b) {
+        if (b instanceof Slab slab && slab.getType() == Slab.Type.TOP) {
+            return 0.5;
+        }
+        if (b instanceof TrapDoor trapdoor && !trapdoor.isOpen() && trapdoor.getHalf() == Bisected.Half.TOP) {
+            return 13.0 / 16;
+        }
+        return 0;
+    }
+
     public static Vector3f cloneV(Vector3f x) {
         return new Vector3f(x.x, x.y, x.z);
     }
@@ -0,0 +1,235 @@
+package me.c7dev.dexterity.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Applies large edits to block entities on the main thread in slices, limited by a time budget per tick.
+ * <p>
+ * Edits are applied in the order they are submitted. As much of a new edit as fits in the current tick's budget is applied
+ * immediately, so small edits still complete synchronously; the rest is continued on the following ticks.
+ * <p>
+ * Edits can be tagged with the object they modify, such as a display, so that a synchronous change to that object can
+ * first {@link #flush(Object)} the edits still pending for it.
+ */
+public class EditApplier {
+
+    private static final int CHECK_INTERVAL = 16; //items applied between clock reads
+
+    private final Plugin plugin;
+    private final ArrayDeque<Edit> queue = new ArrayDeque<>();
+    private long budgetNanos;
+    private long usedNanos = 0;
+    private int usedTick = -1, backlog = 0;
+    private boolean running = false;
+    private BukkitTask task;
+
+    /**
+     * @param plugin
+     * @param budgetMicros Time that may be spent applying edits each tick, or 0 or less to apply every edit immediately
+     */
+    public EditApplier(Plugin plugin, long budgetMicros) {
+        this.plugin = plugin;
+        setBudgetMicros(budgetMicros);
+    }
+
+    public void setBudgetMicros(long budgetMicros) {
+        budgetNanos = budgetMicros * 1000;
+    }
+
+    public long getBudgetMicros() {
+        return budgetNanos / 1000;
+    }
+
+    /**
+     * @return The number of queued block updates that have not been applied yet
+     */
+    public int getBacklogSize() {
+        return backlog;
+    }
+
+    public boolean isIdle() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Queues an edit of many block updates
+     *
+     * @param count      The number of updates
+     * @param update     Applies the update at an index
+     * @param onComplete Ran on the main thread after the last update is applied, or null
+     */
+    public void submit(int count, IntConsumer update, Runnable onComplete) {
+        submit(null, count, update, onComplete);
+    }
+
+    /**
+     * Queues an edit of many block updates
+     *
+     * @param owner      The object being edited, such as a display, or null
+     * @param count      The number of updates
+     * @param update     Applies the update at an index
+     * @param onComplete Ran on the main thread after the last update is applied, or null
+     */
+    public void submit(Object owner, int count, IntConsumer update, Runnable onComplete) {
+        queue.addLast(new Edit(owner, count, update, onComplete));
+        backlog += count;
+        if (!running && queue.size() == 1) { //otherwise picked up by the loop or task that is already running
+            run(null);
+        }
+    }
+
+    /**
+     * Queues an edit that updates each item of a list
+     *
+     * @param items      The items to update, which should not be changed until the edit is complete
+     * @param update     Applies the update to an item
+     * @param onComplete Ran on the main thread after the last update is applied, or null
+     */
+    public <T> void submit(List<T> items, Consumer<T> update, Runnable onComplete) {
+        submit(null, items, update, onComplete);
+    }
+
+    /**
+     * Queues an edit that updates each item of a list
+     *
+     * @param owner      The object being edited, such as a display, or null
+     * @param items      The items to update, which should not be changed until the edit is complete
+     * @param update     Applies the update to an item
+     * @param onComplete Ran on the main thread after the last update is applied, or null
+     */
+    public <T> void submit(Object owner, List<T> items, Consumer<T> update, Runnable onComplete) {
+        submit(owner, items.size(), i -> update.accept(items.get(i)), onComplete);
+    }
+
+    /**
+     * Applies every queued update without a time limit
+     */
+    public void flush() {
+        long budget = budgetNanos;
+        budgetNanos = 0;
+        try {
+            run(null);
+        } finally {
+            budgetNanos = budget;
+        }
+    }
+
+    /**
+     * Applies every queued update of an object without a time limit, along with the edits queued before them so that
+     * the order is kept. Must be called before an object with pending edits is changed synchronously.
+     *
+     * @param owner The object the edits were submitted for
+     */
+    public void flush(Object owner) {
+        Edit last = null;
+        for (Edit e : queue) {
+            if (e.owner == owner) {
+                last = e;
+            }
+        }
+        if (last == null) {
+            return;
+        }
+        long budget = budgetNanos;
+        budgetNanos = 0;
+        try {
+            run(last);
+        } finally {
+            budgetNanos = budget;
+        }
+    }
+
+    /**
+     * @param until Stops once this edit is complete, or null to apply the whole queue
+     */
+    private void run(Edit until) {
+        int tick = Bukkit.getCurrentTick();
+        if (tick != usedTick) {
+            usedTick = tick;
+            usedNanos = 0;
+        }
+        long start = System.nanoTime();
+        boolean limited = budgetNanos > 0;
+        int sinceCheck = 0;
+        running = true;
+
+        while (!queue.isEmpty()) {
+            Edit edit = queue.getFirst();
+            while (edit.next < edit.count) {
+                if (limited && ++sinceCheck >= CHECK_INTERVAL) {
+                    sinceCheck = 0;
+                    if (usedNanos + (System.nanoTime() - start) >= budgetNanos) {
+                        usedNanos = budgetNanos;
+                        running = false;
+                        schedule();
+                        return;
+                    }
+                }
+                int i = edit.next++;
+                backlog--;
+                try {
+                    edit.update.accept(i);
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    Bukkit.getLogger().severe("Could not apply a block update in a Dexterity edit!");
+                }
+            }
+            if (queue.peekFirst() != edit) { //completed by a flush from inside one of its updates
+                if (edit == until) {
+                    break;
+                }
+                continue;
+            }
+            queue.removeFirst();
+            if (edit.onComplete != null) {
+                try {
+                    edit.onComplete.run();
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    Bukkit.getLogger().severe("Could not complete a Dexterity edit!");
+                }
+            }
+            if (edit == until) {
+                break;
+            }
+        }
+
+        usedNanos += System.nanoTime() - start;
+        running = false;
+        if (!queue.isEmpty()) {
+            schedule();
+        } else if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void schedule() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, () -> run(null), 1, 1);
+        }
+    }
+
+    private static class Edit {
+        final Object owner;
+        final int count;
+        final IntConsumer update;
+        final Runnable onComplete;
+        int next = 0;
+
+        Edit(Object owner, int count, IntConsumer update, Runnable onComplete) {
+            this.owner = owner;
+            this.count = count;
+            this.update = update;
+            this.onComplete = onComplete;
+        }
+    }
+
+}
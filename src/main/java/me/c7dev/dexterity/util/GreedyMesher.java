@@ -0,0 +1,187 @@
+package me.c7dev.dexterity.util;
+
+import org.bukkit.util.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Finds boxes of identical blocks that can be replaced by a single scaled block.
+ * <p>
+ * The blocks are placed in a voxel grid, and each box is grown as far as possible along x, then z, then y, so that
+ * every block is in exactly one box. Blocks that are not aligned to the grid, or that overlap another block in the same
+ * cell, are not put in any box.
+ */
+public class GreedyMesher {
+
+    private static final int BIAS = 1 << 20;
+    private static final long MASK = (1L << 21) - 1;
+
+    /**
+     * A box of blocks to merge into the block at its minimum corner
+     */
+    public static class Box {
+        private final int[] cells;
+        private final int dx, dy, dz;
+
+        Box(int[] cells, int dx, int dy, int dz) {
+            this.cells = cells;
+            this.dx = dx;
+            this.dy = dy;
+            this.dz = dz;
+        }
+
+        /**
+         * @return The index of the block that remains after merging
+         */
+        public int getSurvivor() {
+            return cells[0];
+        }
+
+        /**
+         * @return The indices of every block in the box, starting with the survivor
+         */
+        public int[] getCells() {
+            return cells;
+        }
+
+        /**
+         * @return The number of blocks along each axis
+         */
+        public Vector getDimensions() {
+            return new Vector(dx, dy, dz);
+        }
+
+        public int size() {
+            return cells.length;
+        }
+    }
+
+    private final int n;
+    private final int[] gx, gy, gz;
+    private final HashMap<Long, Integer> grid = new HashMap<>();
+    private final boolean[] used;
+
+    /**
+     * @param centers The center of each block in the group's local coordinates. All blocks must be the same type and scale.
+     * @param step    The size of one block along each local axis
+     */
+    public GreedyMesher(List<Vector> centers, Vector step) {
+        n = centers.size();
+        gx = new int[n];
+        gy = new int[n];
+        gz = new int[n];
+        used = new boolean[n];
+        if (n == 0) {
+            return;
+        }
+
+        Vector origin = centers.get(0);
+        double sx = step.getX(), sy = step.getY(), sz = step.getZ();
+        double epsilon = 0.001 * DexUtils.minValue(step);
+        for (int i = 0; i < n; i++) {
+            Vector c = centers.get(i);
+            double fx = (c.getX() - origin.getX()) / sx, fy = (c.getY() - origin.getY()) / sy, fz = (c.getZ() - origin.getZ()) / sz;
+            long rx = Math.round(fx), ry = Math.round(fy), rz = Math.round(fz);
+            if (Math.abs(fx - rx) * sx > epsilon || Math.abs(fy - ry) * sy > epsilon || Math.abs(fz - rz) * sz > epsilon
+                || Math.abs(rx) >= BIAS || Math.abs(ry) >= BIAS || Math.abs(rz) >= BIAS) {
+                used[i] = true; //off the grid
+                continue;
+            }
+            gx[i] = (int) rx;
+            gy[i] = (int) ry;
+            gz[i] = (int) rz;
+            if (grid.putIfAbsent(key(gx[i], gy[i], gz[i]), i) != null) {
+                used[i] = true; //overlaps a block already in the cell
+            }
+        }
+    }
+
+    private static long key(int x, int y, int z) {
+        return (((long) (x + BIAS) & MASK) << 42) | (((long) (z + BIAS) & MASK) << 21) | ((long) (y + BIAS) & MASK);
+    }
+
+    private boolean free(int x, int y, int z) {
+        Integer i = grid.get(key(x, y, z));
+        return i != null && !used[i];
+    }
+
+    /**
+     * Computes the boxes
+     *
+     * @return Every box of more than one block
+     */
+    public List<Box> mesh() {
+        List<Box> boxes = new ArrayList<>();
+        if (grid.size() <= 1) {
+            return boxes;
+        }
+
+        //visit cells from the minimum corner so each box starts at its own minimum
+        Integer[] order = grid.values().toArray(new Integer[0]);
+        Arrays.sort(order, (a, b) -> {
+            if (gy[a] != gy[b]) {
+                return Integer.compare(gy[a], gy[b]);
+            }
+            if (gz[a] != gz[b]) {
+                return Integer.compare(gz[a], gz[b]);
+            }
+            return Integer.compare(gx[a], gx[b]);
+        });
+
+        for (int start : order) {
+            if (used[start]) {
+                continue;
+            }
+            int x = gx[start], y = gy[start], z = gz[start];
+
+            int dx = 1;
+            while (free(x + dx, y, z)) {
+                dx++;
+            }
+
+            int dz = 1;
+            grow_z:
+            while (true) {
+                for (int i = 0; i < dx; i++) {
+                    if (!free(x + i, y, z + dz)) {
+                        break grow_z;
+                    }
+                }
+                dz++;
+            }
+
+            int dy = 1;
+            grow_y:
+            while (true) {
+                for (int k = 0; k < dz; k++) {
+                    for (int i = 0; i < dx; i++) {
+                        if (!free(x + i, y + dy, z + k)) {
+                            break grow_y;
+                        }
+                    }
+                }
+                dy++;
+            }
+
+            int[] cells = new int[dx * dy * dz];
+            int c = 0;
+            for (int j = 0; j < dy; j++) {
+                for (int k = 0; k < dz; k++) {
+                    for (int i = 0; i < dx; i++) {
+                        int idx = grid.get(key(x + i, y + j, z + k));
+                        used[idx] = true;
+                        cells[c++] = idx;
+                    }
+                }
+            }
+            if (cells.length > 1) {
+                boxes.add(new Box(cells, dx, dy, dz));
+            }
+        }
+        return boxes;
+    }
+
+}
@@ -19,6 +19,19 @@ public class InteractionCommand {
         this.cmd = cmd;
     }
 
+    /**
+     * Creates a copy of another command
+     *
+     * @param other
+     */
+    public InteractionCommand(InteractionCommand other) {
+        cmd = other.cmd;
+        perm = other.perm;
+        left = other.left;
+        right = other.right;
+        player = other.player;
+    }
+
     public InteractionCommand(ConfigurationSection s) {
         cmd = s.getString("cmd");
         left = s.getBoolean("left-click", true);
@@ -0,0 +1,181 @@
+package me.c7dev.dexterity.util;
+
+import org.bukkit.util.Vector;
+import org.joml.Quaterniond;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the orientations that blocks end up in after a rotation, shared by every display.
+ * <p>
+ * Orientations are packed into a long by quantizing pitch, yaw, and roll, and rotations by quantizing the quaternion,
+ * so results can be reused across ticks of an animation and across displays that have the same orientations.
+ * Safe to use from rotation worker threads.
+ */
+public class OrientationCache {
+
+    private static final double ORIENTATION_STEPS = 1000; //per degree
+    private static final double ROTATION_STEPS = 1000000; //per unit, the same precision that QueuedRotation compares with
+    private static final long MASK = (1L << 21) - 1;
+
+    private final LruMap<Key, Result> results;
+    private final LruMap<Long, AxisPair> axes;
+    private long hits = 0, misses = 0;
+
+    /**
+     * @param capacity The maximum number of rotation results, and separately of orientation axes, to keep
+     */
+    public OrientationCache(int capacity) {
+        results = new LruMap<>(capacity);
+        axes = new LruMap<>(capacity);
+    }
+
+    /**
+     * The new orientation of a block after a rotation
+     */
+    public static class Result {
+        public final float pitch, yaw, roll;
+        private final AxisPair axes;
+
+        Result(float pitch, float yaw, float roll, AxisPair axes) {
+            this.pitch = pitch;
+            this.yaw = yaw;
+            this.roll = roll;
+            this.axes = axes;
+        }
+    }
+
+    /**
+     * @return Key of a block orientation in degrees
+     */
+    public static long orientationKey(float pitch, float yaw, float roll) {
+        return ((Math.round(pitch * ORIENTATION_STEPS) & MASK) << 42)
+            | ((Math.round(yaw * ORIENTATION_STEPS) & MASK) << 21)
+            | (Math.round(roll * ORIENTATION_STEPS) & MASK);
+    }
+
+    /**
+     * @return Key of a rotation, where q and -q are the same rotation
+     */
+    public static long rotationKey(Quaterniond q) {
+        double sign = q.w < 0 ? -1 : 1;
+        return ((Math.round(sign * q.x * ROTATION_STEPS) & MASK) << 42)
+            | ((Math.round(sign * q.y * ROTATION_STEPS) & MASK) << 21)
+            | (Math.round(sign * q.z * ROTATION_STEPS) & MASK);
+    }
+
+    /**
+     * Gets the new orientation of a block, computing and caching it on a miss
+     *
+     * @param pitch       The block's pitch in degrees
+     * @param yaw         The block's yaw in degrees
+     * @param roll        The block's roll in degrees
+     * @param q           The rotation
+     * @param rotationKey The key of q
+     * @return The orientation after the rotation
+     * @see #rotationKey(Quaterniond)
+     */
+    public Result get(float pitch, float yaw, float roll, Quaterniond q, long rotationKey) {
+        long orientation = orientationKey(pitch, yaw, roll);
+        Key key = new Key(orientation, rotationKey);
+        AxisPair a;
+        synchronized (this) {
+            Result r = results.get(key);
+            if (r != null) {
+                hits++;
+                return r;
+            }
+            misses++;
+            a = axes.get(orientation);
+        }
+
+        //reuse the exact axes from a previous rotation when possible, rather than rebuilding them from rounded angles
+        a = a == null ? new AxisPair(yaw, -pitch, -roll) : new AxisPair(a);
+        a.transform(q);
+        Vector dir = a.getPitchYawRoll();
+        Result r = new Result((float) dir.getX(), (float) dir.getY(), (float) dir.getZ(), a);
+
+        synchronized (this) {
+            results.put(key, r);
+            axes.put(orientationKey(r.pitch, r.yaw, r.roll), r.axes);
+        }
+        return r;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return results.evictions + axes.evictions;
+    }
+
+    /**
+     * @return The number of cached rotation results
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * @return The fraction of lookups that were hits, or 0 if there have been none
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public synchronized void clear() {
+        results.clear();
+        axes.clear();
+    }
+
+    public synchronized void resetMetrics() {
+        hits = misses = 0;
+        results.evictions = axes.evictions = 0;
+    }
+
+    private static class Key {
+        final long orientation, rotation;
+
+        Key(long orientation, long rotation) {
+            this.orientation = orientation;
+            this.rotation = rotation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && k.orientation == orientation && k.rotation == rotation;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(orientation * 31 + rotation);
+        }
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        final int capacity;
+        long evictions = 0;
+
+        LruMap(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = Math.max(1, capacity);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > capacity) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+}
@@ -8,9 +8,9 @@ import org.joml.Quaternionf;
 public class OrientationKey {
 
     public static final double epsilon = 0.000001;
-    private final Quaternionf q;
-    private final double x;
-    private final double y;
+    private Quaternionf q;
+    private double x;
+    private double y;
     private long lastUsed = System.currentTimeMillis();
 
     public OrientationKey(double yaw, double pitch, Quaternionf q) {
@@ -19,6 +19,21 @@ public class OrientationKey {
         this.y = pitch;
     }
 
+    /**
+     * Reuses this key for a map lookup without allocating a new one. Must not be called on a key that is stored in a map.
+     *
+     * @param yaw
+     * @param pitch
+     * @param q
+     * @return This key
+     */
+    public OrientationKey set(double yaw, double pitch, Quaternionf q) {
+        this.q = q;
+        this.x = yaw;
+        this.y = pitch;
+        return this;
+    }
+
     public long getLastUsedTime() {
         return lastUsed;
     }
@@ -0,0 +1,120 @@
+package me.c7dev.dexterity.util;
+
+import org.bukkit.util.Vector;
+
+/**
+ * Reusable ray vs. oriented box intersection using the slab method in the box's local frame.
+ * Results are stored in the fields of this object so that testing many boxes does not allocate.
+ */
+public class OrientedBoxRaycast {
+
+    public static final int FACE_UP = 0, FACE_DOWN = 1, FACE_SOUTH = 2, FACE_NORTH = 3, FACE_EAST = 4, FACE_WEST = 5;
+    private static final double EPSILON = 1e-12;
+
+    /**
+     * Distance along the ray to the last hit
+     */
+    public double distance;
+    /**
+     * World coordinates of the last hit
+     */
+    public double hitX, hitY, hitZ;
+    /**
+     * Face of the last hit, ordered up, down, south, north, east, west
+     */
+    public int face;
+
+    /**
+     * Intersects a ray with a box. If the ray starts inside the box, the face it exits through is hit.
+     *
+     * @param ox    Ray origin
+     * @param dx    Normalized ray direction
+     * @param cx    Center of the box
+     * @param east  Unit vector of the box's local x axis
+     * @param up    Unit vector of the box's local y axis
+     * @param south Unit vector of the box's local z axis
+     * @param hx    Half of the box's size along its local x axis
+     * @return True if the ray hits the box at a non-negative distance
+     */
+    public boolean intersect(double ox, double oy, double oz, double dx, double dy, double dz,
+                             double cx, double cy, double cz, Vector east, Vector up, Vector south,
+                             double hx, double hy, double hz) {
+        double px = cx - ox, py = cy - oy, pz = cz - oz;
+        double tEnter = Double.NEGATIVE_INFINITY, tExit = Double.POSITIVE_INFINITY;
+        int enterFace = -1, exitFace = -1;
+
+        for (int axis = 0; axis < 3; axis++) {
+            Vector a;
+            double h;
+            int posFace, negFace;
+            if (axis == 0) {
+                a = up;
+                h = hy;
+                posFace = FACE_UP;
+                negFace = FACE_DOWN;
+            } else if (axis == 1) {
+                a = south;
+                h = hz;
+                posFace = FACE_SOUTH;
+                negFace = FACE_NORTH;
+            } else {
+                a = east;
+                h = hx;
+                posFace = FACE_EAST;
+                negFace = FACE_WEST;
+            }
+
+            double ax = a.getX(), ay = a.getY(), az = a.getZ();
+            double p = px * ax + py * ay + pz * az; //center relative to origin along the axis
+            double f = dx * ax + dy * ay + dz * az;
+            if (Math.abs(f) < EPSILON) {
+                if (Math.abs(p) > h) {
+                    return false; //parallel and outside of the slab
+                }
+                continue;
+            }
+
+            double tNear, tFar;
+            int nearFace, farFace;
+            if (f > 0) {
+                tNear = (p - h) / f;
+                tFar = (p + h) / f;
+                nearFace = negFace;
+                farFace = posFace;
+            } else {
+                tNear = (p + h) / f;
+                tFar = (p - h) / f;
+                nearFace = posFace;
+                farFace = negFace;
+            }
+
+            if (tNear > tEnter) {
+                tEnter = tNear;
+                enterFace = nearFace;
+            }
+            if (tFar < tExit) {
+                tExit = tFar;
+                exitFace = farFace;
+            }
+            if (tEnter > tExit || tExit < 0) {
+                return false;
+            }
+        }
+
+        if (tEnter >= 0) {
+            distance = tEnter;
+            face = enterFace;
+        } else {
+            distance = tExit;
+            face = exitFace;
+        }
+        if (face < 0) {
+            return false;
+        }
+        hitX = ox + dx * distance;
+        hitY = oy + dy * distance;
+        hitZ = oz + dz * distance;
+        return true;
+    }
+
+}
@@ -0,0 +1,245 @@
+package me.c7dev.dexterity.util;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.util.Vector;
+import org.joml.Quaternionf;
+import org.joml.Vector3d;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes a consolidation of blocks, with each orientation group meshed independently on the common {@link ForkJoinPool}.
+ * <p>
+ * The object is created on the main thread, which copies the state of the blocks. Computing only reads the copy, so it
+ * can run on any thread, and the results are applied to the blocks on the main thread.
+ *
+ * @see GreedyMesher
+ */
+public class ParallelConsolidation {
+
+    /**
+     * The new state of a block that grew to fill a box
+     */
+    public static class Change {
+        public final DexBlock block;
+        public final Vector move, scale, displacement, rollOffset;
+
+        Change(DexBlock block, Vector move, Vector scale, Vector displacement, Vector rollOffset) {
+            this.block = block;
+            this.move = move;
+            this.scale = scale;
+            this.displacement = displacement;
+            this.rollOffset = rollOffset;
+        }
+    }
+
+    private final DexBlock[] blocks;
+    private final Vector[] location, scale, displacement;
+    private final BlockData[] data;
+    private final float[] roll;
+    private final List<OrientationKey> keys = new ArrayList<>();
+    private final List<List<Integer>> groups = new ArrayList<>();
+    private final double cx, cy, cz;
+    private final boolean dryRun;
+    private final AtomicInteger done = new AtomicInteger();
+    private final List<DexBlock> removed = new ArrayList<>();
+    private final List<Change> changes = new ArrayList<>();
+    private int removedCount = 0;
+
+    /**
+     * Copies the state of the blocks and groups them by orientation. Must be called on the main thread.
+     *
+     * @param blocks The blocks to consolidate
+     * @param center The origin of the local coordinates used for meshing
+     * @param dryRun If true, only counts the blocks that would be removed
+     */
+    public ParallelConsolidation(List<DexBlock> blocks, Location center, boolean dryRun) {
+        this.blocks = blocks.toArray(new DexBlock[0]);
+        this.dryRun = dryRun;
+        cx = center.getX();
+        cy = center.getY();
+        cz = center.getZ();
+        int n = this.blocks.length;
+        location = new Vector[n];
+        scale = new Vector[n];
+        displacement = new Vector[n];
+        data = new BlockData[n];
+        roll = new float[n];
+
+        HashMap<OrientationKey, List<Integer>> grouped = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            DexBlock db = this.blocks[i];
+            Location entityLoc = db.getEntity().getLocation();
+            location[i] = db.getLocation().toVector();
+            scale[i] = db.getTransformation().getScale().clone();
+            displacement[i] = db.getTransformation().getDisplacement().clone();
+            data[i] = db.getEntity().getBlock();
+            roll[i] = db.getRoll();
+
+            OrientationKey key = new OrientationKey(entityLoc.getYaw(), entityLoc.getPitch(), DexUtils.cloneQ(db.getTransformation().getLeftRotation()));
+            List<Integer> group = grouped.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                grouped.put(key, group);
+                keys.add(key);
+                groups.add(group);
+            }
+            group.add(i);
+        }
+    }
+
+    /**
+     * Meshes every orientation group and merges the results
+     */
+    public void compute() {
+        List<GroupTask> tasks = new ArrayList<>(groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            tasks.add(new GroupTask(keys.get(i), groups.get(i)));
+        }
+        if (tasks.size() == 1) {
+            merge(tasks.get(0).compute());
+            return;
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        for (GroupTask task : tasks) {
+            pool.execute(task);
+        }
+        for (GroupTask task : tasks) {
+            merge(task.join());
+        }
+    }
+
+    private void merge(GroupResult r) {
+        removed.addAll(r.removed);
+        changes.addAll(r.changes);
+        removedCount += r.removedCount;
+    }
+
+    /**
+     * @return The fraction of blocks that have been meshed, safe to read from any thread
+     */
+    public double getProgress() {
+        return blocks.length == 0 ? 1 : (double) done.get() / blocks.length;
+    }
+
+    /**
+     * @return The blocks that were merged into another block and should be removed
+     */
+    public List<DexBlock> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return The blocks that grew and should be updated
+     */
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return The number of blocks that are, or in a dry run would be, removed
+     */
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    private static class GroupResult {
+        final List<DexBlock> removed = new ArrayList<>();
+        final List<Change> changes = new ArrayList<>();
+        int removedCount = 0;
+    }
+
+    private class GroupTask extends RecursiveTask<GroupResult> {
+        private final OrientationKey key;
+        private final List<Integer> indices;
+
+        GroupTask(OrientationKey key, List<Integer> indices) {
+            this.key = key;
+            this.indices = indices;
+        }
+
+        @Override
+        protected GroupResult compute() {
+            GroupResult r = new GroupResult();
+            Quaternionf q = DexUtils.cloneQ(key.getQuaternion());
+            q.w = -q.w;
+            q.rotateX((float) Math.toRadians(-key.getPitch()));
+            q.rotateY((float) Math.toRadians(key.getYaw()));
+
+            //split by block type and scale, then find the boxes in local coordinates
+            HashMap<MeshKey, List<Integer>> types = new HashMap<>();
+            for (int i : indices) {
+                types.computeIfAbsent(new MeshKey(data[i], scale[i]), k -> new ArrayList<>()).add(i);
+            }
+
+            HashMap<Material, Vector> sizeMap = new HashMap<>();
+            Vector3d diff = new Vector3d();
+            for (List<Integer> type : types.values()) {
+                if (type.size() > 1) {
+                    int first = type.get(0);
+                    Vector blocksize = sizeMap.computeIfAbsent(data[first].getMaterial(), m -> DexUtils.getBlockDimensions(data[first]));
+                    Vector s = scale[first];
+
+                    List<Vector> centers = new ArrayList<>(type.size());
+                    for (int i : type) {
+                        q.transform(diff.set(location[i].getX() - cx, location[i].getY() - cy, location[i].getZ() - cz));
+                        centers.add(DexUtils.vector(diff));
+                    }
+
+                    for (GreedyMesher.Box box : new GreedyMesher(centers, DexUtils.hadimard(blocksize, s)).mesh()) {
+                        r.removedCount += box.size() - 1;
+                        if (dryRun) {
+                            continue;
+                        }
+                        int survivor = type.get(box.getSurvivor());
+                        Vector newScale = DexUtils.hadimard(s, box.getDimensions());
+
+                        //keep the minimum corner in place while the block grows
+                        Vector del = displacement[survivor].clone().add(newScale.clone().multiply(0.5));
+                        Vector move = DexUtils.vector(q.transformInverse(DexUtils.vectord(del)));
+                        Vector rollOffset = roll[survivor] == 0 ? null : new RollOffset(key.getQuaternion(), newScale).getOffset();
+                        r.changes.add(new Change(blocks[survivor], move, newScale, newScale.clone().multiply(-0.5), rollOffset));
+
+                        int[] cells = box.getCells();
+                        for (int c = 1; c < cells.length; c++) {
+                            r.removed.add(blocks[type.get(cells[c])]);
+                        }
+                    }
+                }
+                done.addAndGet(type.size());
+            }
+            return r;
+        }
+    }
+
+    private static class MeshKey {
+        private static final double STEPS = 100000;
+        private final BlockData data;
+        private final long x, y, z;
+
+        MeshKey(BlockData data, Vector scale) {
+            this.data = data;
+            x = Math.round(scale.getX() * STEPS);
+            y = Math.round(scale.getY() * STEPS);
+            z = Math.round(scale.getZ() * STEPS);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MeshKey k && k.x == x && k.y == y && k.z == z && k.data.equals(data);
+        }
+
+        @Override
+        public int hashCode() {
+            return data.hashCode() * 31 + Long.hashCode((x * 31 + y) * 31 + z);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package me.c7dev.dexterity.util;
+
+import org.bukkit.util.Vector;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the offsets and new orientations of the blocks in a rotation, split across the common {@link ForkJoinPool}.
+ * Results are written into arrays indexed by each block's position in the {@link RotationSnapshot}.
+ * <p>
+ * The object is created on the main thread, computed on any thread, and applied on the main thread.
+ * Computing only reads the snapshot and the thread-safe {@link OrientationCache}.
+ */
+public class ParallelRotation {
+
+    private static final int LEAF_SIZE = 1024;
+
+    public final double[] offsetX, offsetY, offsetZ;
+    public final float[] pitch, yaw, roll;
+
+    private final RotationSnapshot snapshot;
+    private final Quaterniond q;
+    private final long rotationKey;
+    private final double cx, cy, cz;
+    private final OrientationCache cache;
+
+    /**
+     * @param snapshot The blocks to rotate
+     * @param q        The rotation
+     * @param center   The center of rotation
+     * @param cache    Cache of orientations shared with other rotations
+     */
+    public ParallelRotation(RotationSnapshot snapshot, Quaterniond q, Vector center, OrientationCache cache) {
+        this.snapshot = snapshot;
+        this.q = new Quaterniond(q);
+        this.rotationKey = OrientationCache.rotationKey(q);
+        this.cx = center.getX();
+        this.cy = center.getY();
+        this.cz = center.getZ();
+        this.cache = cache;
+        int n = snapshot.size();
+        offsetX = new double[n];
+        offsetY = new double[n];
+        offsetZ = new double[n];
+        pitch = new float[n];
+        yaw = new float[n];
+        roll = new float[n];
+    }
+
+    /**
+     * Fills the result arrays
+     */
+    public void compute() {
+        int n = snapshot.size();
+        if (n <= LEAF_SIZE) {
+            computeRange(0, n);
+        } else {
+            ForkJoinPool.commonPool().invoke(new Task(0, n));
+        }
+    }
+
+    public RotationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private void computeRange(int from, int to) {
+        //most blocks share a few orientations, so check a worker-local map before the shared cache's lock
+        HashMap<Long, OrientationCache.Result> local = new HashMap<>();
+        Vector3d r = new Vector3d();
+        for (int i = from; i < to; i++) {
+            float bpitch = snapshot.getPitch(i), byaw = snapshot.getYaw(i), broll = snapshot.getRoll(i);
+            long key = OrientationCache.orientationKey(bpitch, byaw, broll);
+            OrientationCache.Result dir = local.get(key);
+            if (dir == null) {
+                dir = cache.get(bpitch, byaw, broll, q, rotationKey);
+                local.put(key, dir);
+            }
+
+            double rx = snapshot.getX(i) - cx, ry = snapshot.getY(i) - cy, rz = snapshot.getZ(i) - cz;
+            q.transform(r.set(rx, ry, rz));
+            offsetX[i] = r.x - rx;
+            offsetY[i] = r.y - ry;
+            offsetZ[i] = r.z - rz;
+            pitch[i] = dir.pitch;
+            yaw[i] = dir.yaw;
+            roll[i] = dir.roll;
+        }
+    }
+
+    private class Task extends RecursiveAction {
+        private final int from, to;
+
+        Task(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                computeRange(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Task(from, mid), new Task(mid, to));
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package me.c7dev.dexterity.util;
+
+import me.c7dev.dexterity.displays.DexterityDisplay;
+import org.bukkit.Location;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Immutable copy of the block state that a rotation reads, so the rotation can be computed off the main thread
+ * without touching entities or {@link DexTransformation}s.
+ */
+public final class RotationSnapshot {
+
+    private final DexterityDisplay display;
+    private final DexBlock[] blocks;
+    private final double[] x, y, z;
+    private final float[] pitch, yaw, roll;
+    private final int modCount;
+    private Set<DexBlock> current = null;
+    private int currentModCount;
+
+    /**
+     * Copies the state of every block in the display. Must be called on the main thread.
+     *
+     * @param d
+     */
+    public RotationSnapshot(DexterityDisplay d) {
+        display = d;
+        blocks = d.getBlocks();
+        modCount = d.getBlocksModCount();
+        int n = blocks.length;
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+        pitch = new float[n];
+        yaw = new float[n];
+        roll = new float[n];
+        for (int i = 0; i < n; i++) {
+            DexBlock db = blocks[i];
+            Location entityLoc = db.getEntity().getLocation(), loc = db.getLocation();
+            x[i] = loc.getX();
+            y[i] = loc.getY();
+            z[i] = loc.getZ();
+            pitch[i] = entityLoc.getPitch();
+            yaw[i] = entityLoc.getYaw();
+            roll[i] = db.getRoll();
+        }
+    }
+
+    public int size() {
+        return blocks.length;
+    }
+
+    /**
+     * @param i
+     * @return The block at the index. Only use its entity on the main thread.
+     */
+    public DexBlock getBlock(int i) {
+        return blocks[i];
+    }
+
+    /**
+     * Checks if the block at the index is still in the display, such as when the rotation is applied. Must be called on the main thread.
+     *
+     * @param i
+     * @return False if the block has been removed from the display since the snapshot was taken
+     */
+    public boolean isInDisplay(int i) {
+        int mod = display.getBlocksModCount();
+        if (mod == modCount) {
+            return true;
+        }
+        if (current == null || mod != currentModCount) {
+            current = Collections.newSetFromMap(new IdentityHashMap<>());
+            current.addAll(display.getBlocksView());
+            currentModCount = mod;
+        }
+        return current.contains(blocks[i]);
+    }
+
+    /**
+     * @return The display's block modification count when the snapshot was taken
+     * @see DexterityDisplay#getBlocksModCount()
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * @param i
+     * @return The x coordinate of the block's visual center
+     */
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public double getZ(int i) {
+        return z[i];
+    }
+
+    public float getPitch(int i) {
+        return pitch[i];
+    }
+
+    public float getYaw(int i) {
+        return yaw[i];
+    }
+
+    public float getRoll(int i) {
+        return roll[i];
+    }
+
+}
@@ -0,0 +1,47 @@
+package me.c7dev.dexterity.util;
+
+/**
+ * Batched rotation around the vertical axis. Blocks keep their pitch and roll, so the new positions and yaws are computed
+ * with one precomputed sine and cosine in a single pass over primitive arrays.
+ */
+public class YawRotation {
+
+    public final double[] x, y, z;
+    public final float[] yaw, pitch;
+
+    private final RotationSnapshot snapshot;
+
+    /**
+     * Computes the rotation of every block in the snapshot
+     *
+     * @param snapshot
+     * @param rad      The angle in radians, counterclockwise when viewed from above
+     * @param cx       The x coordinate of the center of rotation
+     * @param cz       The z coordinate of the center of rotation
+     */
+    public YawRotation(RotationSnapshot snapshot, float rad, double cx, double cz) {
+        this.snapshot = snapshot;
+        int n = snapshot.size();
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+        yaw = new float[n];
+        pitch = new float[n];
+
+        double cos = Math.cos(rad), sin = Math.sin(rad);
+        float deg = (float) Math.toDegrees(rad);
+        for (int i = 0; i < n; i++) {
+            double rx = snapshot.getX(i) - cx, rz = snapshot.getZ(i) - cz;
+            x[i] = cx + cos * rx + sin * rz;
+            y[i] = snapshot.getY(i);
+            z[i] = cz - sin * rx + cos * rz;
+            yaw[i] = snapshot.getYaw(i) - deg;
+            pitch[i] = snapshot.getPitch(i);
+        }
+    }
+
+    public RotationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+}